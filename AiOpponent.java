@@ -0,0 +1,425 @@
+import java.awt.event.KeyEvent;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/** AiOpponent is a CPU controlled player 2. It presses and releases the arrow keys through
+ * GameLogic.handlePlayerInput, exactly like a human player would.
+ *
+ * Moves are picked with Monte Carlo tree search: every worker thread grows its own search tree from a copy of the
+ * GameLogic as it will be when the move is due (root parallelisation), simulating player 1 with random moves, and the visit counts of the
+ * first moves are merged at the end. A search is bounded both by the rollout budget (the difficulty) and by a deadline
+ * (25 ms, within one tick at the default 30 ticks per second, and always before its move is due). The search runs in the background while the game keeps ticking,
+ * and its move is applied on the tick it is due.
+ */
+public class AiOpponent implements AiOpponentMBean {
+
+    // Difficulties, as the number of rollouts per decision
+    static final int EASY = 150;
+    static final int NORMAL = 1000;
+    static final int HARD = 6000;
+
+    // Moves the AI can choose between
+    static final int ACTION_IDLE = 0;
+    static final int ACTION_LEFT = 1;
+    static final int ACTION_RIGHT = 2;
+    static final int ACTION_JUMP = 3;
+    static final int ACTION_ATTACK = 4;
+    static final int ACTION_COUNT = 5;
+
+    // Keys held down, as bits of a mask
+    private static final int HELD_LEFT = 1;
+    private static final int HELD_RIGHT = 2;
+    private static final int HELD_ATTACK = 4;
+
+    private static final int ACTION_TICKS = 3; // A move is held for this many ticks (~10 moves per second)
+    private static final int TREE_DEPTH = 4;
+    private static final int ROLLOUT_DEPTH = 10;
+    private static final double EXPLORATION = 1.2;
+    private static final long DECISION_TIME_NANOS = 25_000_000L; // Well inside one 33 ms tick (at 30 ticks/s)
+
+    // fields
+    private final int rolloutBudget;
+    private final long decisionTimeNanos;
+    private final int workers;
+    private final ExecutorService pool;
+    private final LatencyHistogram decisionLatency = new LatencyHistogram();
+
+    private int held = 0;
+    private int ticksUntilMove = ACTION_TICKS;
+    private CompletableFuture<Decision> pending;
+    private long pendingStart;
+
+    private volatile long decisionCount, lateDecisions;
+    private volatile double rolloutsPerSecond;
+    private volatile int lastDecisionRollouts;
+
+    /** Constructs an AI opponent.
+     *
+     * @param rolloutBudget the rollouts per decision, e.g. EASY, NORMAL or HARD.
+     * @param tickPeriodNanos the time between two game ticks, so a search is done before its move is due.
+     */
+    public AiOpponent(int rolloutBudget, long tickPeriodNanos) {
+        this.rolloutBudget = rolloutBudget;
+        this.decisionTimeNanos = Math.min(DECISION_TIME_NANOS, tickPeriodNanos * ACTION_TICKS * 3 / 4);
+        this.workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "ai-rollouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Registers the AI metrics with the platform MBean server (CombatGame:type=AiOpponent), replacing the ones of
+     * an earlier AI. Called from the thread that calls onTick.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("CombatGame:type=AiOpponent");
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Checks if a key belongs to the player the AI controls, so the keyboard can be ignored for it.
+     *
+     * @param key the key code.
+     * @return true for the arrow keys (player 2).
+     */
+    static boolean controlsKey(int key) {
+        return key == KeyEvent.VK_LEFT || key == KeyEvent.VK_RIGHT || key == KeyEvent.VK_UP || key == KeyEvent.VK_DOWN;
+    }
+
+    /** Called on every game tick, before the tick is run. Applies the move of a finished search when it is due,
+     * and starts the search for the next move.
+     *
+     * @param gameLogic the game the AI plays in.
+     */
+    public void onTick(GameLogic gameLogic) {
+        if (pool.isShutdown()) {
+            return;
+        }
+        if (ticksUntilMove > 0) {
+            ticksUntilMove--;
+        }
+        if (pending != null && ticksUntilMove == 0) {
+            if (!pending.isDone()) {
+                lateDecisions++; // Keep holding the last move until the search is done
+                return;
+            }
+            Decision decision = pending.join();
+            pending = null;
+            recordDecision(decision);
+            held = applyAction(gameLogic, 2, decision.action, held);
+            ticksUntilMove = ACTION_TICKS;
+        }
+        if (pending == null && !gameLogic.isGameEnded()) {
+            // The move is applied ticksUntilMove ticks from now, so search from the state it will be applied in,
+            // with both players keeping their keys held down until then
+            GameLogic root = gameLogic.copy();
+            for (int i = 0; i < ticksUntilMove && !root.isGameEnded(); i++) {
+                root.onGameTick();
+            }
+            startSearch(root, held);
+        }
+    }
+
+    /** Stops the worker threads and unregisters the metrics. The AI makes no more moves after this.
+     * Called once, when the AI is replaced or the match is over, from the thread that calls onTick.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+        pending = null;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("CombatGame:type=AiOpponent");
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return true once shutdown was called.
+     */
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    /** Starts a search on all workers and combines the visit counts when they are done.
+     */
+    private void startSearch(GameLogic root, int rootHeld) {
+        long start = System.nanoTime();
+        long deadline = start + decisionTimeNanos;
+        int budgetPerWorker = Math.max(1, rolloutBudget / workers);
+
+        List<CompletableFuture<int[]>> searches = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            long seed = start + i * 0x9E3779B97F4A7C15L;
+            searches.add(CompletableFuture.supplyAsync(() -> search(root, rootHeld, budgetPerWorker, deadline, seed), pool));
+        }
+        pendingStart = start;
+        pending = CompletableFuture.allOf(searches.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            int[] visits = new int[ACTION_COUNT + 1]; // The last slot holds the number of rollouts
+            for (CompletableFuture<int[]> search : searches) {
+                int[] result = search.join();
+                for (int i = 0; i < visits.length; i++) {
+                    visits[i] += result[i];
+                }
+            }
+            int best = ACTION_IDLE;
+            for (int action = 1; action < ACTION_COUNT; action++) {
+                if (visits[action] > visits[best]) {
+                    best = action;
+                }
+            }
+            return new Decision(best, visits[ACTION_COUNT], System.nanoTime());
+        });
+    }
+
+    /** Keeps the metrics of a finished decision. Only called from the game thread.
+     */
+    private void recordDecision(Decision decision) {
+        long latency = decision.finishedNanos - pendingStart;
+        decisionLatency.record(latency);
+        decisionCount++;
+        lastDecisionRollouts = decision.rollouts;
+        rolloutsPerSecond = latency > 0 ? decision.rollouts * 1e9 / latency : 0;
+    }
+
+    /** Runs one worker's tree search.
+     *
+     * @return the visits of each first move, followed by the number of rollouts done.
+     */
+    private static int[] search(GameLogic root, int rootHeld, int budget, long deadline, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Node rootNode = new Node();
+        Node[] path = new Node[TREE_DEPTH + 1];
+        int rollouts = 0;
+
+        while (rollouts < budget && System.nanoTime() < deadline) {
+            GameLogic sim = root.copy();
+            int held1 = 0;
+            int held2 = rootHeld;
+            Node node = rootNode;
+            path[0] = node;
+            int depth = 0;
+
+            // Selection and expansion: follow UCT down the tree until a move is tried for the first time
+            boolean expanded = false;
+            while (depth < TREE_DEPTH && !expanded && !sim.isGameEnded()) {
+                if (node.children == null) {
+                    node.children = new Node[ACTION_COUNT];
+                }
+                int action = selectAction(node);
+                if (node.children[action] == null) {
+                    node.children[action] = new Node();
+                    expanded = true;
+                }
+                held2 = applyAction(sim, 2, action, held2);
+                held1 = applyAction(sim, 1, random.nextInt(ACTION_COUNT), held1);
+                step(sim);
+                node = node.children[action];
+                path[++depth] = node;
+            }
+
+            // Rollout: both players move randomly
+            for (int i = depth; i < ROLLOUT_DEPTH && !sim.isGameEnded(); i++) {
+                held2 = applyAction(sim, 2, random.nextInt(ACTION_COUNT), held2);
+                held1 = applyAction(sim, 1, random.nextInt(ACTION_COUNT), held1);
+                step(sim);
+            }
+
+            double value = evaluate(root, sim);
+            for (int i = 0; i <= depth; i++) {
+                path[i].visits++;
+                path[i].total += value;
+            }
+            rollouts++;
+        }
+
+        int[] result = new int[ACTION_COUNT + 1];
+        if (rootNode.children != null) {
+            for (int action = 0; action < ACTION_COUNT; action++) {
+                Node child = rootNode.children[action];
+                result[action] = child == null ? 0 : child.visits;
+            }
+        }
+        result[ACTION_COUNT] = rollouts;
+        return result;
+    }
+
+    /** Picks the child with the best UCT score, trying every move once first.
+     */
+    private static int selectAction(Node node) {
+        int best = 0;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        double logVisits = Math.log(Math.max(1, node.visits));
+        for (int action = 0; action < ACTION_COUNT; action++) {
+            Node child = node.children[action];
+            if (child == null) {
+                return action;
+            }
+            double score = child.total / child.visits + EXPLORATION * Math.sqrt(logVisits / child.visits);
+            if (score > bestScore) {
+                bestScore = score;
+                best = action;
+            }
+        }
+        return best;
+    }
+
+    /** Runs the ticks one move lasts.
+     */
+    private static void step(GameLogic sim) {
+        for (int i = 0; i < ACTION_TICKS && !sim.isGameEnded(); i++) {
+            sim.onGameTick();
+        }
+    }
+
+    /** Scores a simulated outcome from player 2's point of view, between -1 and 1.
+     * Winning counts fully, otherwise the health difference gained, with a small bonus for staying close to player 1.
+     */
+    private static double evaluate(GameLogic root, GameLogic sim) {
+        if (sim.isGameEnded()) {
+            return sim.getPlayer2Health() > 0 ? 1 : -1;
+        }
+        int dealt = root.getPlayer1Health() - sim.getPlayer1Health();
+        int taken = root.getPlayer2Health() - sim.getPlayer2Health();
+        double score = (dealt - taken) / 40.0;
+        double distance = Math.abs(sim.getPlayer1X() - sim.getPlayer2X());
+        score += 0.1 * (1 - Math.min(distance, 800) / 800);
+        return Math.max(-1, Math.min(1, score));
+    }
+
+    /** Turns a move into key presses/releases for a player, given the keys that player is holding down.
+     *
+     * @param gameLogic the game to send the keys to.
+     * @param player the player number (1 or 2).
+     * @param action one of the ACTION_ constants.
+     * @param held the keys held down before the move.
+     * @return the keys held down after the move.
+     */
+    static int applyAction(GameLogic gameLogic, int player, int action, int held) {
+        int left = player == 1 ? KeyEvent.VK_A : KeyEvent.VK_LEFT;
+        int right = player == 1 ? KeyEvent.VK_D : KeyEvent.VK_RIGHT;
+        int jump = player == 1 ? KeyEvent.VK_W : KeyEvent.VK_UP;
+        int attack = player == 1 ? KeyEvent.VK_S : KeyEvent.VK_DOWN;
+
+        int wanted;
+        switch (action) {
+            case ACTION_LEFT:
+                wanted = HELD_LEFT;
+                break;
+            case ACTION_RIGHT:
+                wanted = HELD_RIGHT;
+                break;
+            case ACTION_JUMP:
+                wanted = held & (HELD_LEFT | HELD_RIGHT); // Jump while keeping the current direction
+                break;
+            case ACTION_ATTACK:
+                wanted = HELD_ATTACK;
+                break;
+            default:
+                wanted = 0;
+                break;
+        }
+
+        // Release what is no longer wanted (and the attack key, so a new attack is a new press)
+        if ((held & HELD_LEFT) != 0 && (wanted & HELD_LEFT) == 0) {
+            gameLogic.handlePlayerInput(left, false);
+        }
+        if ((held & HELD_RIGHT) != 0 && (wanted & HELD_RIGHT) == 0) {
+            gameLogic.handlePlayerInput(right, false);
+        }
+        if ((held & HELD_ATTACK) != 0) {
+            gameLogic.handlePlayerInput(attack, false);
+        }
+
+        if ((wanted & HELD_LEFT) != 0 && (held & HELD_LEFT) == 0) {
+            gameLogic.handlePlayerInput(left, true);
+        }
+        if ((wanted & HELD_RIGHT) != 0 && (held & HELD_RIGHT) == 0) {
+            gameLogic.handlePlayerInput(right, true);
+        }
+        if ((wanted & HELD_ATTACK) != 0) {
+            gameLogic.handlePlayerInput(attack, true);
+        }
+        if (action == ACTION_JUMP) {
+            gameLogic.handlePlayerInput(jump, true);
+        }
+        return wanted;
+    }
+
+    @Override
+    public int getRolloutBudget() {
+        return rolloutBudget;
+    }
+
+    @Override
+    public long getDecisionCount() {
+        return decisionCount;
+    }
+
+    @Override
+    public long getLateDecisions() {
+        return lateDecisions;
+    }
+
+    @Override
+    public double getRolloutsPerSecond() {
+        return rolloutsPerSecond;
+    }
+
+    @Override
+    public int getLastDecisionRollouts() {
+        return lastDecisionRollouts;
+    }
+
+    @Override
+    public double getDecisionLatencyP50Micros() {
+        return decisionLatency.getValueAtPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getDecisionLatencyP99Micros() {
+        return decisionLatency.getValueAtPercentile(99) / 1000.0;
+    }
+
+    /** A node of a worker's search tree, holding the statistics of one move.
+     */
+    private static class Node {
+        private int visits;
+        private double total;
+        private Node[] children;
+    }
+
+    /** The move a search settled on.
+     */
+    private static class Decision {
+        private final int action;
+        private final int rollouts;
+        private final long finishedNanos;
+
+        private Decision(int action, int rollouts, long finishedNanos) {
+            this.action = action;
+            this.rollouts = rollouts;
+            this.finishedNanos = finishedNanos;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/** The JMX management interface of the AiOpponent, exposing its search budget and decision metrics.
+ */
+public interface AiOpponentMBean {
+
+    /**
+     * @return the maximum number of rollouts per decision (the difficulty).
+     */
+    int getRolloutBudget();
+
+    /**
+     * @return the number of decisions made so far.
+     */
+    long getDecisionCount();
+
+    /**
+     * @return the number of decisions that were not ready when the next move was due.
+     */
+    long getLateDecisions();
+
+    /**
+     * @return the rollouts per second (all worker threads together) of the last decision.
+     */
+    double getRolloutsPerSecond();
+
+    /**
+     * @return the rollouts the last decision was based on.
+     */
+    int getLastDecisionRollouts();
+
+    /**
+     * @return the median time from starting a search to having its result, in microseconds.
+     */
+    double getDecisionLatencyP50Micros();
+
+    /**
+     * @return the 99th percentile time from starting a search to having its result, in microseconds.
+     */
+    double getDecisionLatencyP99Micros();
+}
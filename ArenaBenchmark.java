@@ -0,0 +1,106 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+
+/** ArenaBenchmark finds how many arenas an ArenaHost can run before it is overloaded. It doubles the number of
+ * arenas on one host until a step is overloaded (skipped ticks, or more than 1% of the step's ticks late, so a
+ * single bad second such as a GC pause does not count), then retries from the last healthy count in steps of an
+ * eighth of it. Each step is given a second to settle and then measured for a few seconds. The last healthy count
+ * per thread is the arenas per core to configure (ArenaHost.DEFAULT_ARENAS_PER_CORE).
+ *
+ * It also reports the heap per arena and the time to render a grid of thumbnails with one and with all cores.
+ *
+ * Run with: java -Djava.awt.headless=true ArenaBenchmark [threads] [tickRate] [secondsPerStep]
+ */
+public class ArenaBenchmark {
+
+    private static final int FIRST_STEP = 16;
+    private static final int GRID_ARENAS = 64;
+    private static final int GRID_FRAMES = 20;
+
+    /** Runs the benchmark.
+     * @param args optionally the number of threads, the tick rate and the seconds per step.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int tickRate = args.length > 1 ? Integer.parseInt(args[1]) : CombatGame.DEFAULT_TICK_RATE;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        new CombatGame(1_000_000_000L / tickRate); // Loads the shared images, so the heap per arena excludes them
+        long heapBefore = usedHeap();
+        ArenaHost host = new ArenaHost(threads, tickRate, Integer.MAX_VALUE / threads);
+        System.out.println(threads + " threads, " + tickRate + " ticks/s per arena, " + seconds + " s per step:");
+
+        int healthy = 0;
+        int arenas = FIRST_STEP;
+        int increment = 0;
+        while (true) {
+            while (host.getArenaCount() < arenas) {
+                host.addArena(host.getArenaCount());
+            }
+            Thread.sleep(1000); // Settle: new arenas start within a tick, and the JIT catches up
+            long lateBefore = host.getLateTicks();
+            long skippedBefore = host.getSkippedTicks();
+            double ticks = 0, load = 0, maxLateness = 0;
+            for (int second = 0; second < seconds; second++) {
+                Thread.sleep(1000);
+                ticks += host.getTicksPerSecond();
+                load += host.getLoad();
+                maxLateness = Math.max(maxLateness, host.getMaxLatenessMicros());
+            }
+            long late = host.getLateTicks() - lateBefore;
+            long skipped = host.getSkippedTicks() - skippedBefore;
+            boolean overloaded = skipped > 0 || late > 0.01 * ticks;
+            System.out.printf("  %6d arenas  ticks/s %8.0f (of %8d)  late %6.2f%%  skipped %6d  load %4.0f%%  "
+                    + "max lateness %7.1f ms%s%n", arenas, ticks / seconds, arenas * tickRate,
+                    100.0 * late / Math.max(1, ticks), skipped, 100 * load / seconds, maxLateness / 1000,
+                    overloaded ? "  OVERLOADED" : "");
+            if (overloaded) {
+                if (increment == 0 && healthy > 0) { // Refine between the last two doublings
+                    increment = Math.max(1, healthy / 8);
+                    host.shutdown();
+                    host = new ArenaHost(threads, tickRate, Integer.MAX_VALUE / threads);
+                    arenas = healthy + increment;
+                    continue;
+                }
+                break;
+            }
+            healthy = arenas;
+            arenas = increment == 0 ? arenas * 2 : arenas + increment;
+        }
+        host.shutdown();
+        System.out.println("healthy up to " + healthy + " arenas, " + healthy / threads + " arenas per core");
+
+        host = new ArenaHost(threads, tickRate, Integer.MAX_VALUE / threads);
+        for (int i = 0; i < GRID_ARENAS; i++) {
+            host.addArena(i);
+        }
+        System.out.printf("heap per arena: %d KB%n", (usedHeap() - heapBefore) / GRID_ARENAS >> 10);
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("rendering " + GRID_ARENAS + " thumbnails (200x150):");
+        for (int renderThreads : cores > 1 ? new int[] {1, cores} : new int[] {1}) {
+            ArenaGrid grid = new ArenaGrid(host, 8, 200, renderThreads);
+            for (int frame = 0; frame < GRID_FRAMES; frame++) { // Warm-up
+                grid.render();
+            }
+            double millis = 0;
+            for (int frame = 0; frame < GRID_FRAMES; frame++) {
+                grid.render();
+                millis += grid.getRenderMillis();
+            }
+            grid.stop();
+            System.out.printf("  %2d render threads: %6.1f ms per grid frame%n", renderThreads, millis / GRID_FRAMES);
+        }
+        host.shutdown();
+    }
+
+    /** Gets the used heap after collecting garbage (a few times, to let the collector settle).
+     */
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,163 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+
+/** ArenaGrid shows the arenas of an ArenaHost as a grid of thumbnails, with the host's status on top.
+ *
+ * The thumbnails are rendered off the EDT by a render thread, which paints the visible arenas in parallel on its
+ * own ForkJoinPool (each thumbnail into its own back image), then swaps the back images to the front and waits for
+ * the EDT to blit them. Painting a thumbnail only reads an arena's published snapshots, so the render threads never
+ * block the host's threads, and the EDT does no game painting at all.
+ */
+public class ArenaGrid extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+    private static final int STATUS_HEIGHT = 20;
+
+    // fields
+    private final ArenaHost host;
+    private final int columns;
+    private final int thumbnailWidth, thumbnailHeight;
+    private final ForkJoinPool renderPool;
+    private volatile BufferedImage[] front = new BufferedImage[0];
+    private BufferedImage[] back = new BufferedImage[0];
+    private volatile int firstVisibleRow, lastVisibleRow;
+    private volatile double renderMillis;
+    private volatile boolean running;
+
+    /** Constructs a grid view of a host.
+     *
+     * @param host the host.
+     * @param columns the number of thumbnails per row.
+     * @param thumbnailWidth the width of a thumbnail, the height follows from the 800x600 game.
+     * @param renderThreads the number of threads rendering the thumbnails.
+     */
+    public ArenaGrid(ArenaHost host, int columns, int thumbnailWidth, int renderThreads) {
+        this.host = host;
+        this.columns = columns;
+        this.thumbnailWidth = thumbnailWidth;
+        this.thumbnailHeight = thumbnailWidth * 3 / 4;
+        this.renderPool = new ForkJoinPool(renderThreads);
+        int rows = Math.max(1, (host.getArenaCount() + columns - 1) / columns);
+        setPreferredSize(new Dimension(columns * thumbnailWidth, STATUS_HEIGHT + rows * thumbnailHeight));
+        lastVisibleRow = rows - 1;
+        setBackground(Color.BLACK);
+    }
+
+    /** Starts the render thread.
+     *
+     * @param fps the number of grid frames per second.
+     */
+    public void start(int fps) {
+        running = true;
+        long framePeriodNanos = 1_000_000_000L / fps;
+        Thread renderThread = new Thread(() -> {
+            long nextFrame = System.nanoTime();
+            while (running) {
+                render();
+                try {
+                    SwingUtilities.invokeAndWait(() -> paintImmediately(0, 0, getWidth(), getHeight()));
+                } catch (InterruptedException | InvocationTargetException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                nextFrame += framePeriodNanos;
+                long sleep = nextFrame - System.nanoTime();
+                if (sleep > 0) {
+                    LockSupport.parkNanos(sleep);
+                } else {
+                    nextFrame = System.nanoTime(); // Rendering is slower than the frame rate, do not catch up
+                }
+            }
+        }, "arena-grid");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+
+    /** Stops the render thread and its pool.
+     */
+    public void stop() {
+        running = false;
+        renderPool.shutdown();
+    }
+
+    /**
+     * @return the time the last grid frame took to render, in milliseconds.
+     */
+    public double getRenderMillis() {
+        return renderMillis;
+    }
+
+    /** Renders the thumbnails of the visible arenas into the back images in parallel, then makes them the front
+     * images. The previous front images become the back images: the render thread only calls this after the EDT
+     * has painted them.
+     */
+    void render() {
+        long start = System.nanoTime();
+        ArenaHost.Arena[] arenas = host.getArenas().toArray(new ArenaHost.Arena[0]);
+        BufferedImage[] images = back;
+        if (images.length != arenas.length) {
+            BufferedImage[] resized = new BufferedImage[arenas.length];
+            System.arraycopy(images, 0, resized, 0, Math.min(arenas.length, images.length));
+            images = resized;
+        }
+        BufferedImage[] target = images;
+        int first = Math.min(arenas.length, firstVisibleRow * columns);
+        int last = Math.min(arenas.length, (lastVisibleRow + 1) * columns);
+        renderPool.submit(() -> IntStream.range(first, last).parallel().forEach(i -> {
+            if (target[i] == null) {
+                target[i] = new BufferedImage(thumbnailWidth, thumbnailHeight, BufferedImage.TYPE_INT_RGB);
+            }
+            renderThumbnail(arenas[i].getGame(), target[i]);
+        })).join();
+        back = front;
+        front = target;
+        renderMillis = (System.nanoTime() - start) / 1e6;
+    }
+
+    /** Paints one game scaled down into its thumbnail.
+     */
+    private void renderThumbnail(CombatGame game, BufferedImage thumbnail) {
+        Graphics2D g = thumbnail.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.scale(thumbnail.getWidth() / (double) game.getWidth(), thumbnail.getHeight() / (double) game.getHeight());
+        game.paintOffscreen(g);
+        g.dispose();
+    }
+
+    /** Blits the front thumbnails and the status line, and notes which rows are visible for the next render.
+     * Runs on the EDT.
+     *
+     * @param g the graphics object.
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Rectangle visible = getVisibleRect();
+        firstVisibleRow = Math.max(0, (visible.y - STATUS_HEIGHT) / thumbnailHeight);
+        lastVisibleRow = Math.max(0, (visible.y + visible.height - STATUS_HEIGHT) / thumbnailHeight);
+
+        BufferedImage[] images = front;
+        for (int i = 0; i < images.length; i++) {
+            if (images[i] != null) {
+                g.drawImage(images[i], (i % columns) * thumbnailWidth,
+                        STATUS_HEIGHT + (i / columns) * thumbnailHeight, null);
+            }
+        }
+        g.setColor(Color.WHITE);
+        g.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        g.drawString(String.format("%s  render %.1f ms", host.status(), renderMillis), 5, visible.y + 14);
+    }
+}
@@ -0,0 +1,314 @@
+import java.awt.Dimension;
+import java.awt.event.KeyEvent;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.swing.JFrame;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+
+
+/** ArenaHost runs many matches (arenas) in one JVM on a shared pool of threads, instead of a GameLoop with its own
+ * threads per game.
+ *
+ * Every arena has its own tick deadline, staggered over the tick period so the arenas do not all tick at once.
+ * A tick is a task on a ScheduledThreadPoolExecutor, which runs due tasks in the order of their deadlines. Each task
+ * runs exactly one tick and then schedules the arena's next tick at its next deadline. An arena that is behind
+ * therefore catches up one tick at a time, queued by how overdue it is, and cannot hold on to a thread while other
+ * arenas wait. An arena more than MAX_CATCH_UP_TICKS behind skips the missed ticks instead.
+ *
+ * Late ticks (started more than half a period after their deadline) and skipped ticks are the overload signals.
+ * They are exposed over JMX together with the tick rate, the lateness and the load of the threads. The number of
+ * arenas is capped at threads times arenas per core. That density is a tuning knob, see ArenaBenchmark for
+ * measuring it.
+ *
+ * The players of the arenas are bots pressing random keys through the same input queue as the keyboard.
+ *
+ * Run with: java ArenaHost [arenas] [threads] [--grid]
+ */
+public class ArenaHost implements ArenaHostMBean {
+
+    static final int DEFAULT_ARENAS_PER_CORE = 4000; // About a third of where ArenaBenchmark saw a core saturate
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    private static final int RESTART_TICKS = 60; // A finished match stays on screen for a while
+    private static final int BOT_ACTION_ODDS = 6; // A bot changes its key about every sixth tick
+    private static final int[][] BOT_KEYS = {
+        {KeyEvent.VK_A, KeyEvent.VK_D, KeyEvent.VK_W, KeyEvent.VK_S},
+        {KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_UP, KeyEvent.VK_DOWN}};
+    private static final long ONE_SECOND = 1_000_000_000L;
+
+    /** One match run by the host. */
+    public static class Arena {
+        private final CombatGame game;
+        private final SplittableRandom random;
+        private final int[] heldKeys = new int[2];
+        private long nextTick;
+        private int ticksSinceMatchOver;
+        private volatile boolean removed;
+
+        Arena(CombatGame game, long seed) {
+            this.game = game;
+            this.random = new SplittableRandom(seed);
+        }
+
+        /**
+         * @return the game of this arena.
+         */
+        public CombatGame getGame() {
+            return game;
+        }
+
+        /** Lets both bots release their key and press a new one now and then.
+         */
+        private void playBots(long now) {
+            for (int player = 0; player < 2; player++) {
+                if (random.nextInt(BOT_ACTION_ODDS) != 0) {
+                    continue;
+                }
+                if (heldKeys[player] != 0) {
+                    game.offerKey(heldKeys[player], false, now);
+                }
+                int[] keys = BOT_KEYS[player];
+                heldKeys[player] = keys[random.nextInt(keys.length)];
+                game.offerKey(heldKeys[player], true, now);
+            }
+        }
+    }
+
+    // fields
+    private final ScheduledThreadPoolExecutor executor;
+    private final int threads;
+    private final int capacity;
+    private final long tickPeriodNanos;
+    private final List<Arena> arenas = new CopyOnWriteArrayList<>();
+
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder lateTicks = new LongAdder();
+    private final LongAdder skippedTicks = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAccumulator maxLateness = new LongAccumulator(Math::max, 0);
+
+    // The last full second, updated by the window task
+    private long windowStart, windowTicks, windowLate, windowSkipped, windowBusy;
+    private volatile double ticksPerSecond, lateRatio, maxLatenessMicros, load;
+    private volatile boolean overloaded;
+
+    /** Constructs and starts a host without arenas.
+     *
+     * @param threads the number of threads ticking the arenas (e.g. the number of cores).
+     * @param tickRate the ticks per second of every arena.
+     * @param arenasPerCore the maximum number of arenas per thread.
+     */
+    public ArenaHost(int threads, int tickRate, int arenasPerCore) {
+        this.threads = threads;
+        this.capacity = (int) Math.min(Integer.MAX_VALUE, (long) threads * arenasPerCore);
+        this.tickPeriodNanos = ONE_SECOND / tickRate;
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "arena-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        windowStart = System.nanoTime();
+        executor.scheduleAtFixedRate(this::updateWindow, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /** Registers the host with the platform MBean server (CombatGame:type=ArenaHost).
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("CombatGame:type=ArenaHost");
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Starts a new arena. Its first tick is placed at a random point of the tick period.
+     *
+     * @param seed the seed of the arena's bots.
+     * @return the arena.
+     * @throws IllegalStateException if the host is at capacity.
+     */
+    public Arena addArena(long seed) {
+        if (arenas.size() >= capacity) {
+            throw new IllegalStateException("The host is full (" + capacity + " arenas)");
+        }
+        Arena arena = new Arena(new CombatGame(tickPeriodNanos), seed);
+        arena.nextTick = System.nanoTime() + arena.random.nextLong(tickPeriodNanos);
+        arenas.add(arena);
+        schedule(arena, arena.nextTick - System.nanoTime());
+        return arena;
+    }
+
+    /** Stops an arena after its current tick.
+     *
+     * @param arena the arena.
+     */
+    public void removeArena(Arena arena) {
+        arena.removed = true;
+        arenas.remove(arena);
+    }
+
+    /** Stops all arenas and the threads.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the running arenas.
+     */
+    public List<Arena> getArenas() {
+        return arenas;
+    }
+
+    /**
+     * @return the time between two ticks of an arena in nanoseconds.
+     */
+    public long getTickPeriodNanos() {
+        return tickPeriodNanos;
+    }
+
+    /** Runs one tick of an arena and schedules the next one.
+     */
+    private void runTick(Arena arena) {
+        if (arena.removed) {
+            return;
+        }
+        long start = System.nanoTime();
+        long lateness = start - arena.nextTick;
+        if (lateness >= MAX_CATCH_UP_TICKS * tickPeriodNanos) {
+            // Too far behind to catch up, skip the missed ticks instead of fast-forwarding the match
+            long skipped = lateness / tickPeriodNanos;
+            skippedTicks.add(skipped);
+            arena.nextTick += skipped * tickPeriodNanos;
+            lateness -= skipped * tickPeriodNanos;
+        }
+        if (lateness > tickPeriodNanos / 2) {
+            lateTicks.increment();
+        }
+        maxLateness.accumulate(lateness);
+
+        try {
+            arena.playBots(start);
+            arena.game.tick(arena.nextTick);
+            if (arena.game.isMatchOver() && ++arena.ticksSinceMatchOver >= RESTART_TICKS) {
+                arena.game.newMatch();
+                arena.ticksSinceMatchOver = 0;
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace(); // A broken arena must not take the others down
+            removeArena(arena);
+            return;
+        }
+        ticks.increment();
+        arena.nextTick += tickPeriodNanos;
+        long end = System.nanoTime();
+        busyNanos.add(end - start);
+        schedule(arena, arena.nextTick - end);
+    }
+
+    /** Schedules the next tick of an arena. A negative delay (a late arena) still orders it by its deadline.
+     */
+    private void schedule(Arena arena, long delayNanos) {
+        try {
+            executor.schedule(() -> runTick(arena), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    /** Computes the rates of the last second. Runs once per second on the host's threads.
+     */
+    private void updateWindow() {
+        long now = System.nanoTime();
+        long tickCount = ticks.sum();
+        long late = lateTicks.sum();
+        long skipped = skippedTicks.sum();
+        long busy = busyNanos.sum();
+        long elapsed = now - windowStart;
+
+        ticksPerSecond = (tickCount - windowTicks) * (double) ONE_SECOND / elapsed;
+        lateRatio = tickCount == windowTicks ? 0 : (double) (late - windowLate) / (tickCount - windowTicks);
+        maxLatenessMicros = maxLateness.getThenReset() / 1e3;
+        load = (double) (busy - windowBusy) / ((double) elapsed * threads);
+        overloaded = skipped > windowSkipped || lateRatio > 0.01;
+
+        windowStart = now;
+        windowTicks = tickCount;
+        windowLate = late;
+        windowSkipped = skipped;
+        windowBusy = busy;
+    }
+
+    // ArenaHostMBean
+    @Override public int getArenaCount() { return arenas.size(); }
+    @Override public int getCapacity() { return capacity; }
+    @Override public int getThreads() { return threads; }
+    @Override public double getTicksPerSecond() { return ticksPerSecond; }
+    @Override public long getLateTicks() { return lateTicks.sum(); }
+    @Override public long getSkippedTicks() { return skippedTicks.sum(); }
+    @Override public double getLateRatio() { return lateRatio; }
+    @Override public double getMaxLatenessMicros() { return maxLatenessMicros; }
+    @Override public double getLoad() { return load; }
+    @Override public boolean isOverloaded() { return overloaded; }
+
+    /** Describes the state of the host on one line.
+     *
+     * @return the description.
+     */
+    public String status() {
+        return String.format("arenas %d/%d  ticks/s %.0f  late %.2f%%  skipped %d  max lateness %.1f ms  load %.0f%%%s",
+                arenas.size(), capacity, ticksPerSecond, lateRatio * 100, getSkippedTicks(),
+                maxLatenessMicros / 1000, load * 100, overloaded ? "  OVERLOADED" : "");
+    }
+
+    /** Runs a host with a number of arenas, printing its status every second, optionally with a grid view.
+     *
+     * @param args the number of arenas, the number of threads, and --grid to show the arenas.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int arenaCount = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int threadCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        ArenaHost host = new ArenaHost(threadCount, CombatGame.DEFAULT_TICK_RATE, DEFAULT_ARENAS_PER_CORE);
+        host.register();
+        for (int i = 0; i < arenaCount; i++) {
+            host.addArena(i);
+        }
+
+        if (args.length > 2 && args[2].equals("--grid")) {
+            SwingUtilities.invokeLater(() -> {
+                JFrame frame = new JFrame("Arena - Host");
+                frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+                ArenaGrid grid = new ArenaGrid(host, 8, 200, Runtime.getRuntime().availableProcessors());
+                JScrollPane scrollPane = new JScrollPane(grid);
+                scrollPane.setPreferredSize(new Dimension(grid.getPreferredSize().width + 20, 660));
+                scrollPane.getVerticalScrollBar().setUnitIncrement(40);
+                frame.add(scrollPane);
+                frame.pack();
+                frame.setVisible(true);
+                grid.start(30);
+            });
+        }
+        while (true) {
+            Thread.sleep(1000);
+            System.out.println(host.status());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/** The JMX management interface of the ArenaHost. The rates and the load are measured over the last full second,
+ * the counters since the host was started.
+ */
+public interface ArenaHostMBean {
+
+    /**
+     * @return the number of arenas running.
+     */
+    int getArenaCount();
+
+    /**
+     * @return the maximum number of arenas, the threads times the arenas per core.
+     */
+    int getCapacity();
+
+    /**
+     * @return the number of threads ticking the arenas.
+     */
+    int getThreads();
+
+    /**
+     * @return the ticks run by all arenas during the last full second.
+     */
+    double getTicksPerSecond();
+
+    /**
+     * @return the number of ticks that started more than half a period later than scheduled.
+     */
+    long getLateTicks();
+
+    /**
+     * @return the number of ticks skipped because an arena was too far behind to catch up.
+     */
+    long getSkippedTicks();
+
+    /**
+     * @return the share of late ticks during the last full second, between 0 and 1.
+     */
+    double getLateRatio();
+
+    /**
+     * @return the most a tick started after its deadline during the last full second, in microseconds.
+     */
+    double getMaxLatenessMicros();
+
+    /**
+     * @return the share of the threads' time spent ticking during the last full second, between 0 and 1.
+     */
+    double getLoad();
+
+    /**
+     * @return true if ticks were skipped or more than 1% were late during the last full second.
+     */
+    boolean isOverloaded();
+}
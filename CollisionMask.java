@@ -0,0 +1,156 @@
+import java.awt.image.BufferedImage;
+
+
+/** CollisionMask is the shape of one sprite frame, built once from its alpha channel: every row is a bitset of
+ * opaque pixels packed into longs (pixel x is bit x % 64 of word x / 64), plus the tight bounds of the opaque area.
+ *
+ * Two masks are tested by rejecting non-overlapping bounds first, and then AND-ing the rows of the overlap
+ * 64 pixels at a time, so a hit test only costs a few dozen word operations.
+ */
+public class CollisionMask {
+
+    static final int FACING_RIGHT = 0;
+    static final int FACING_LEFT = 1;
+
+    // fields
+    private final int width;
+    private final int wordsPerRow;
+    private final long[] bits;
+    private final int minX, minY, maxX, maxY; // Bounds of the opaque pixels (maxX < minX if there are none)
+
+    /** Builds the mask of an image from its alpha channel.
+     *
+     * @param image the sprite frame.
+     * @param mirrored true to build the mask of the horizontally flipped image (a fighter facing left).
+     */
+    public CollisionMask(BufferedImage image, boolean mirrored) {
+        this(image, 0, 0, image.getWidth(), image.getHeight(), mirrored);
+    }
+
+    /** Builds the mask of a cropped sprite frame. The mask covers the full frame, so masks of frames with different
+     * crops line up.
+     *
+     * @param frame the sprite frame.
+     * @param mirrored true to build the mask of the horizontally flipped frame (a fighter facing left).
+     */
+    public CollisionMask(SpriteStore.Frame frame, boolean mirrored) {
+        this(frame.getCompactImage(), frame.getOffsetX(), frame.getOffsetY(), frame.getFrameWidth(),
+                frame.getFrameHeight(), mirrored);
+    }
+
+    /** Builds the mask of an image placed at (offsetX, offsetY) inside a larger transparent frame.
+     */
+    private CollisionMask(BufferedImage image, int offsetX, int offsetY, int frameWidth, int frameHeight,
+            boolean mirrored) {
+        width = frameWidth;
+        wordsPerRow = (width + 63) >>> 6;
+        bits = new long[wordsPerRow * frameHeight];
+
+        int left = width, top = frameHeight, right = -1, bottom = -1;
+        int[] row = new int[image.getWidth()];
+        for (int imageY = 0; imageY < image.getHeight(); imageY++) {
+            image.getRGB(0, imageY, row.length, 1, row, 0, row.length);
+            int y = offsetY + imageY;
+            for (int imageX = 0; imageX < row.length; imageX++) {
+                if ((row[imageX] >>> 24) == 0) {
+                    continue;
+                }
+                int x = offsetX + imageX;
+                int maskX = mirrored ? width - 1 - x : x;
+                bits[y * wordsPerRow + (maskX >>> 6)] |= 1L << (maskX & 63);
+                left = Math.min(left, maskX);
+                right = Math.max(right, maskX);
+                top = Math.min(top, y);
+                bottom = Math.max(bottom, y);
+            }
+        }
+        minX = left;
+        minY = top;
+        maxX = right;
+        maxY = bottom;
+    }
+
+    /** Builds the masks of all sprite frames, facing right and left.
+     *
+     * @param sprites the sprites, indexed by state and frame (as in CombatGame.getPlayerSprites).
+     * @return the masks, indexed by state, frame and FACING_RIGHT/FACING_LEFT. A state without sprites gets null.
+     */
+    public static CollisionMask[][][] buildAll(SpriteStore.Frame[][] sprites) {
+        CollisionMask[][][] masks = new CollisionMask[sprites.length][][];
+        for (int state = 0; state < sprites.length; state++) {
+            if (sprites[state] == null) {
+                continue;
+            }
+            masks[state] = new CollisionMask[sprites[state].length][2];
+            for (int frame = 0; frame < sprites[state].length; frame++) {
+                masks[state][frame][FACING_RIGHT] = new CollisionMask(sprites[state][frame], false);
+                masks[state][frame][FACING_LEFT] = new CollisionMask(sprites[state][frame], true);
+            }
+        }
+        return masks;
+    }
+
+    /** Tests if two masks have an opaque pixel in common when b is placed at (dx, dy) relative to a.
+     *
+     * @param a the first mask.
+     * @param b the second mask.
+     * @param dx the x-offset of b relative to a, in mask pixels.
+     * @param dy the y-offset of b relative to a, in mask pixels.
+     * @return true if the shapes overlap.
+     */
+    public static boolean overlaps(CollisionMask a, CollisionMask b, int dx, int dy) {
+        // Bounding box rejection (in a's coordinates)
+        int left = Math.max(a.minX, b.minX + dx);
+        int right = Math.min(a.maxX, b.maxX + dx);
+        int top = Math.max(a.minY, b.minY + dy);
+        int bottom = Math.min(a.maxY, b.maxY + dy);
+        if (left > right || top > bottom) {
+            return false;
+        }
+
+        int firstWord = left >>> 6;
+        int lastWord = right >>> 6;
+        for (int y = top; y <= bottom; y++) {
+            int rowA = y * a.wordsPerRow;
+            int rowB = (y - dy) * b.wordsPerRow;
+            for (int word = firstWord; word <= lastWord; word++) {
+                long bitsA = a.bits[rowA + word];
+                if (bitsA == 0) {
+                    continue;
+                }
+                // Keep only the overlapping columns of this word
+                int from = Math.max(left - (word << 6), 0);
+                int to = Math.min(right - (word << 6), 63);
+                long columns = (-1L >>> (63 - to)) & (-1L << from);
+                if ((bitsA & columns & b.bitsAt(rowB, (word << 6) - dx)) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Reads the 64 pixels of a row starting at column x (which may be negative or past the row).
+     */
+    private long bitsAt(int rowStart, int x) {
+        int word = x >> 6;
+        int shift = x & 63;
+        long low = wordAt(rowStart, word);
+        if (shift == 0) {
+            return low;
+        }
+        long high = wordAt(rowStart, word + 1);
+        return (low >>> shift) | (high << (64 - shift));
+    }
+
+    private long wordAt(int rowStart, int word) {
+        return word < 0 || word >= wordsPerRow ? 0 : bits[rowStart + word];
+    }
+
+    /**
+     * @return the width of the mask in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+}
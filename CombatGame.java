@@ -1,6 +1,4 @@
 import java.awt.*;  
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener; 
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
@@ -14,39 +12,87 @@ import javax.swing.*;
 
 /** The CombatGame class is the main control panel for the game. Here the game initialization,
  * rendering, input handling, and the game states, are managed. The class exdens JPanel, which enables
- * the game to have custom graphics rendering and implements the ActionListener to process
- * game updates (in regular intervals).
+ * the game to have custom graphics rendering. The game updates (in regular intervals) and the repainting
+ * are driven by a GameLoop, each at their own rate.
  * 
  * @author Adam Abdulmajid
  */
 
-public class CombatGame extends JPanel implements ActionListener {
+public class CombatGame extends JPanel {
   
     // Fields
-    private Timer timer;
+    private GameLoop gameLoop;
+    private final long tickPeriodNanos;
     private GamePainter painter;
     private GameLogic gameLogic;
+    private SnapshotBuffer snapshots;
+    private long tickNumber = 0;
+    private TickProfiler profiler;
+    private ParticleSystem particles;
+    private volatile AiOpponent aiOpponent;
+    private AiOpponent tickedAiOpponent; // The AI the logic thread last ticked, only used on that thread
+    private boolean tickedPlaying; // Whether the logic thread has ticked the match yet, only used on that thread
+    private final InputQueue inputQueue = new InputQueue(256);
+    private final LatencyTracer latencyTracer; // Null for arena games, they have no frames shown to trace
+    private final SpectatorFeed spectatorFeed = new SpectatorFeed();
+    private SpectatorFeed spectatedFeed;
+    private SpectatorViewer spectatorViewer;
+    private InputRecording recording;
+    private String recordingFile;
+    private InputRecording replay;
+    private FrameExporter capture;
+    private boolean debugOverlayVisible = false;
     private GenerateRooms generateRooms;
     private Room rooms;
     private BufferedImage backgroundImage;
-    private BufferedImage[][] playerSprites;
-    private int currentGameState = STATE_MENU;
+    private SpriteStore.Frame[][] playerSprites;
+    private CollisionMask[][][] collisionMasks;
+    private Stage stage;
+    private volatile int currentGameState = STATE_MENU;
 
     // Constants for dimensions and states
     private final int characterWidth = 200;
     private final int characterHeight = 200;
     public static final int[] FRAMES_PER_ACTION = {8, 8, 6, 2}; 
+    static final int SPRITE_SCALE = 3;
     static final int STATE_MENU = 0;
     static final int STATE_PLAYING = 1;
+    static final int DEFAULT_TICK_RATE = 30;
+    static final int PARTICLE_CAPACITY = 65536;
+
+    // The images and collision masks are loaded once and shared by all games in the process (spectators, arenas)
+    private static final SpriteStore SPRITE_STORE = new SpriteStore(SpriteStore.DEFAULT_HOT_FRAMES);
+    private static BufferedImage sharedBackgroundImage;
+    private static CollisionMask[][][] sharedCollisionMasks;
+    private static Stage sharedStage;
 
     /**
      * Constructor for CombatGame, initializing game components, loading images, 
-     * and setting up controls and the game timer.
+     * and setting up controls and the game loop.
+     * The logic tick rate and the frame rate limit can be set with the system properties
+     * arena.tickRate (default 30) and arena.maxFps (default the display refresh rate).
+     * The stage geometry is read from the file set with the system property arena.stage (default Stage.txt).
+     * With the system property arena.record the inputs of the match are saved to that file when it ends,
+     * for replaying and exporting it with FrameExporter.
      */
 
     public CombatGame() {
+        int tickRate = Integer.getInteger("arena.tickRate", DEFAULT_TICK_RATE);
+        int maxFps = Integer.getInteger("arena.maxFps", displayRefreshRate());
+        gameLoop = new GameLoop(this, tickRate, maxFps);
+        tickPeriodNanos = gameLoop.getTickPeriodNanos();
+        profiler = new TickProfiler(tickPeriodNanos);
+        profiler.register("Arena");
+        latencyTracer = new LatencyTracer(1024);
         gameLogic = new GameLogic(this);
-        painter = new GamePainter(this, gameLogic);
+        gameLogic.setProfiler(profiler);
+        particles = new ParticleSystem(PARTICLE_CAPACITY);
+        gameLogic.setParticles(particles);
+        gameLogic.setWinLog(GenerateRooms.winLog);
+        gameLogic.setLadder(GenerateRooms.ladder, GenerateRooms.player1Name, GenerateRooms.player2Name);
+        recordingFile = System.getProperty("arena.record"); // Recorded from the start of the match, in tick()
+        snapshots = new SnapshotBuffer(gameLogic.snapshot(0, System.nanoTime()));
+        painter = new GamePainter(this, snapshots);
         generateRooms = new GenerateRooms();
      
         setFocusable(true);
@@ -55,39 +101,259 @@ public class CombatGame extends JPanel implements ActionListener {
         loadImages();
         setupControls();
         
-        timer = new Timer(1000 / 30, this);
-        timer.start();
+        gameLoop.start();
+    }
+
+    /**
+     * Constructor for a spectator CombatGame: a read-only view of another game, painting the snapshots decoded
+     * from its SpectatorFeed. It runs no game logic and ignores the game controls (F3 still toggles the overlay).
+     * 
+     * @param feed the feed of the game to watch
+     * @param tickPeriodNanos the time between two ticks of the watched game, used for interpolation
+     */
+    CombatGame(SpectatorFeed feed, long tickPeriodNanos) {
+        int tickRate = (int) Math.round(1e9 / tickPeriodNanos);
+        gameLoop = new GameLoop(this, tickRate, Integer.getInteger("arena.maxFps", displayRefreshRate()));
+        this.tickPeriodNanos = tickPeriodNanos;
+        profiler = new TickProfiler(tickPeriodNanos);
+        latencyTracer = new LatencyTracer(1024);
+        gameLogic = new GameLogic(this);
+        snapshots = new SnapshotBuffer(gameLogic.snapshot(0, System.nanoTime()));
+        painter = new GamePainter(this, snapshots);
+        currentGameState = STATE_PLAYING;
+
+        setFocusable(true);
+        setPreferredSize(new Dimension(800, 600));
+        setBackground(Color.BLACK);
+        loadImages();
+        addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_F3) {
+                    debugOverlayVisible = !debugOverlayVisible;
+                }
+            }
+        });
+
+        spectatedFeed = feed;
+        spectatorViewer = new SpectatorViewer(snapshots);
+        feed.subscribe(spectatorViewer);
+        gameLoop.startRendering();
+    }
+
+    /**
+     * Constructor for an arena CombatGame, one of many matches run by an ArenaHost. It has no GameLoop, window or
+     * controls: the host calls tick on its shared scheduler and feeds the input, and the game is only painted
+     * offscreen when someone looks at it (see ArenaGrid). To keep arenas small they have no profiler, no latency
+     * tracer and no particles (unless set with setParticles), and their results are not logged or rated.
+     * 
+     * @param tickPeriodNanos the time between two ticks of the host
+     */
+    CombatGame(long tickPeriodNanos) {
+        this.tickPeriodNanos = tickPeriodNanos;
+        latencyTracer = null;
+        gameLogic = new GameLogic(this);
+        snapshots = new SnapshotBuffer(gameLogic.snapshot(0, System.nanoTime()));
+        painter = new GamePainter(this, snapshots);
+        currentGameState = STATE_PLAYING;
+        setSize(800, 600);
+        setBackground(Color.BLACK);
+        loadImages();
+    }
+
+    /**
+     * Starts a new match in an arena CombatGame. Called by the ArenaHost between ticks.
+     */
+    void newMatch() {
+        gameLogic = new GameLogic(this);
+        gameLogic.setParticles(particles);
+    }
+
+    /**
+     * Gives an arena CombatGame a particle system, so it shows hit sparks and dust (e.g. when exporting its frames).
+     * Must be called before its first tick.
+     * 
+     * @param particles the particle system
+     */
+    void setParticles(ParticleSystem particles) {
+        this.particles = particles;
+        gameLogic.setParticles(particles);
+    }
+
+    /**
+     * Records the inputs of the current match from now on. Must be called before its first tick.
+     * 
+     * @param recording the recording to record into
+     */
+    void setRecording(InputRecording recording) {
+        this.recording = recording;
+        gameLogic.setInputRecording(recording);
+    }
+
+    /**
+     * Makes an arena CombatGame replay a recorded match: each tick applies the recorded inputs of that tick
+     * instead of the queued ones. Must be called before the first tick.
+     * 
+     * @param replay the recording to replay
+     */
+    void setReplay(InputRecording replay) {
+        this.replay = replay;
+    }
+
+    /**
+     * Queues a key event for the next tick, like the key listener does. Used by ArenaHost to feed input to arenas,
+     * from the thread that ticks the game.
+     * 
+     * @param keyCode the key code
+     * @param pressed true for a press, false for a release
+     * @param nanos the System.nanoTime() of the event
+     */
+    void offerKey(int keyCode, boolean pressed, long nanos) {
+        inputQueue.offer(keyCode, pressed, nanos);
+    }
+
+    /**
+     * @return true if the current match is over.
+     */
+    boolean isMatchOver() {
+        return gameLogic.isGameEnded();
+    }
+
+    /**
+     * Paints the game into an offscreen image (e.g. an arena thumbnail), from any thread. The graphics may be
+     * scaled, the game is painted at its own size (800x600).
+     * 
+     * @param g the graphics of the image
+     */
+    void paintOffscreen(Graphics g) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        painter.paintComponent(g);
+    }
+
+    /**
+     * Paints the match between two ticks into an offscreen image, see FrameExporter. Like paintOffscreen,
+     * but at a given point between the ticks instead of the current time.
+     * 
+     * @param g the graphics of the image
+     * @param previous the state of the previous tick
+     * @param current the state of the current tick
+     * @param alpha how far the frame is between the previous and the current tick (0 to 1)
+     */
+    void paintSnapshots(Graphics g, GameSnapshot previous, GameSnapshot current, double alpha) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        painter.paintFrame(g, previous, current, alpha);
+    }
+
+    /**
+     * @return the last two snapshots, the previous and the current one (see SnapshotBuffer).
+     */
+    GameSnapshot[] getLatestSnapshots() {
+        return snapshots.getLatest();
+    }
+
+    /**
+     * Stops a spectator CombatGame: unsubscribes from the watched game and stops repainting.
+     */
+    void stopSpectating() {
+        if (spectatedFeed != null) {
+            spectatedFeed.unsubscribe(spectatorViewer);
+        }
+        gameLoop.stop();
     }
     
     /**
-     * Updates the game state at each game tick and repaints the screen.
+     * Applies the queued key events, then updates the game state and publishes it for painting and spectators.
+     * Called by the GameLoop on its logic thread at each game tick.
      * 
-     * @param e the ActionEvent triggered by the timer
+     * @param tickNanos the System.nanoTime() the tick was scheduled for
      */
-    @Override
-    public void actionPerformed(ActionEvent e) {
+    void tick(long tickNanos) {
+        boolean playing = currentGameState == STATE_PLAYING;
+        if (playing && !tickedPlaying) {
+            // The match was started in the menu: record it from its first tick, not the menu ticks before it
+            if (recordingFile != null) {
+                setRecording(new InputRecording(tickPeriodNanos));
+            }
+            tickedPlaying = true;
+        }
+        if (replay != null) {
+            replay.applyTick(gameLogic);
+        } else {
+            inputQueue.drainTo(gameLogic, latencyTracer, tickNumber + 1);
+        }
+        AiOpponent ai = aiOpponent;
+        if (ai != tickedAiOpponent) {
+            // Chosen in the menu: the old AI is stopped and the new one registered here, on the thread that ticks them
+            if (tickedAiOpponent != null && !tickedAiOpponent.isShutdown()) {
+                tickedAiOpponent.shutdown();
+            }
+            if (ai != null) {
+                ai.register();
+            }
+            tickedAiOpponent = ai;
+        }
+        if (ai != null && playing) {
+            ai.onTick(gameLogic);
+        }
         gameLogic.onGameTick();
-        repaint();
+        if (ai != null && gameLogic.isGameEnded() && !ai.isShutdown()) {
+            ai.shutdown();
+        }
+        if (recording != null && recordingFile != null && gameLogic.isGameEnded()) {
+            saveRecording();
+        }
+        GameSnapshot snapshot = gameLogic.snapshot(++tickNumber, tickNanos);
+        snapshots.publish(snapshot);
+        spectatorFeed.publish(snapshot);
     }
 
-    /** Loads background and sprite images for every logical player/game state.
-     * Tries reading the image files, and handles IOExceptions if file/files cannot be found.
+    /** Finds the refresh rate of the screen, used as the default frame rate limit.
+     * 
+     * @return the refresh rate in Hz, or 60 if it is unknown.
+     */
+    private static int displayRefreshRate() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return 60;
+        }
+        int refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDisplayMode().getRefreshRate();
+        return refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN ? 60 : refreshRate;
+    }
+
+    /** Loads background and sprite images for every logical player/game state, builds the collision masks
+     * of the sprites and loads the stage geometry. Tries reading the image files, and handles IOExceptions if file/files cannot be found.
+     * The first game in the process loads them, the others share them.
     */
     private void loadImages() {
-        try {
-            backgroundImage = ImageIO.read(new File("ryustage (1).jpg"));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        synchronized (SPRITE_STORE) {
+            if (sharedBackgroundImage == null) {
+                try {
+                    sharedBackgroundImage = ImageIO.read(new File("ryustage (1).jpg"));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
 
-        playerSprites = new BufferedImage[4][];
-        loadFrames("Idle.png", GameLogic.STATE_IDLE, FRAMES_PER_ACTION[GameLogic.STATE_IDLE]);
-        loadFrames("Run.png", GameLogic.STATE_RUN, FRAMES_PER_ACTION[GameLogic.STATE_RUN]);
-        loadFrames("Attack1.png", GameLogic.STATE_ATTACK, FRAMES_PER_ACTION[GameLogic.STATE_ATTACK]);
-        loadFrames("Jump.png", GameLogic.STATE_JUMP, FRAMES_PER_ACTION[GameLogic.STATE_JUMP]);
+            playerSprites = new SpriteStore.Frame[4][];
+            loadFrames("Idle.png", GameLogic.STATE_IDLE, FRAMES_PER_ACTION[GameLogic.STATE_IDLE]);
+            loadFrames("Run.png", GameLogic.STATE_RUN, FRAMES_PER_ACTION[GameLogic.STATE_RUN]);
+            loadFrames("Attack1.png", GameLogic.STATE_ATTACK, FRAMES_PER_ACTION[GameLogic.STATE_ATTACK]);
+            loadFrames("Jump.png", GameLogic.STATE_JUMP, FRAMES_PER_ACTION[GameLogic.STATE_JUMP]);
+            if (sharedCollisionMasks == null) {
+                sharedCollisionMasks = CollisionMask.buildAll(playerSprites);
+            }
+            if (sharedStage == null) {
+                sharedStage = Stage.load(System.getProperty("arena.stage", "Stage.txt"));
+            }
+            backgroundImage = sharedBackgroundImage;
+            collisionMasks = sharedCollisionMasks;
+            stage = sharedStage;
+        }
     }
 
-    /** Loads individual frames from a sprite sheet for specific player action.
+    /** Loads individual frames from a sprite sheet for specific player action, cropped and compacted by the SpriteStore.
      * 
      * @param fileName the name of the file containing the sprite sheet for specfic action.
      * @param stateIndex the index representing the player's state/action. 
@@ -96,56 +362,120 @@ public class CombatGame extends JPanel implements ActionListener {
      */
     private void loadFrames(String fileName, int stateIndex, int frameCount) {
         try {
-            BufferedImage sheet = ImageIO.read(new File(fileName));
-            playerSprites[stateIndex] = new BufferedImage[frameCount];
-            for (int i = 0; i < frameCount; i++) {
-                playerSprites[stateIndex][i] = sheet.getSubimage(i * characterWidth, 0, characterWidth, characterHeight);
-            }
+            playerSprites[stateIndex] = SPRITE_STORE.load(fileName, characterWidth, characterHeight, frameCount);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    /** Sets up keyboard controls for menu and gameplay.
+    /** Sets up keyboard controls for menu and gameplay. Gameplay keys are not applied right away,
+     * they are queued and applied by the game loop at the start of the next tick.
      */
     private void setupControls() {
         addKeyListener(new KeyAdapter() {
             @Override
             public void keyPressed(KeyEvent e) {
-                if (currentGameState == STATE_MENU) {
+                if (e.getKeyCode() == KeyEvent.VK_F3) {
+                    debugOverlayVisible = !debugOverlayVisible; // Toggle the timing overlay in any state
+                } else if (e.getKeyCode() == KeyEvent.VK_F2) {
+                    SpectatorViewer.open(CombatGame.this); // Open a spectator window on this game
+                } else if (e.getKeyCode() == KeyEvent.VK_F4) {
+                    toggleCapture();
+                } else if (currentGameState == STATE_MENU) {
                     handleMenuInput(e.getKeyCode());
-                } else if (currentGameState == STATE_PLAYING) {
-                    gameLogic.handlePlayerInput(e.getKeyCode(), true);
+                } else if (currentGameState == STATE_PLAYING && isHumanKey(e.getKeyCode())) {
+                    inputQueue.offer(e.getKeyCode(), true, System.nanoTime());
                 }
             }
 
             @Override
             public void keyReleased(KeyEvent e) {
-                if (currentGameState == STATE_PLAYING) {
-                    gameLogic.handlePlayerInput(e.getKeyCode(), false);
+                if (currentGameState == STATE_PLAYING && isHumanKey(e.getKeyCode())) {
+                    inputQueue.offer(e.getKeyCode(), false, System.nanoTime());
                 }
             }
         });
     }
 
-    /**  Handles menu inputs to start or exit the game.
+    /** Saves the recorded inputs when the match has ended (on the logic thread, the file is a few KB).
+     */
+    private void saveRecording() {
+        try {
+            recording.write(recordingFile);
+            System.out.println("Match recorded to " + recordingFile + " (" + recording.getTickCount() + " ticks, "
+                    + recording.getEventCount() + " key events)");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        recordingFile = null;
+    }
+
+    /** Starts or stops capturing the match live to a PNG sequence in a new capture-... directory (F4).
+     * Stopping waits for the queued frames to be encoded, so it is done off the EDT.
+     */
+    private void toggleCapture() {
+        if (capture == null) {
+            try {
+                capture = new FrameExporter(new File("capture-" + System.currentTimeMillis()), FrameExporter.FORMAT_PNG,
+                        Runtime.getRuntime().availableProcessors(), tickPeriodNanos, 1);
+                capture.startLive(this);
+            } catch (IOException e) {
+                e.printStackTrace();
+                capture = null;
+            }
+            return;
+        }
+        FrameExporter stopped = capture;
+        capture = null;
+        new Thread(() -> {
+            try {
+                stopped.finish();
+                System.out.println(stopped.report());
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+            }
+        }, "capture-finish").start();
+    }
+
+    /** Checks if a key may be handled from the keyboard, i.e. it does not belong to a player controlled by the AI.
+     * @param key the key value of the pressed key
+     * @return true if the key should be passed on to the game logic
+     */
+    private boolean isHumanKey(int key) {
+        return aiOpponent == null || !AiOpponent.controlsKey(key);
+    }
+
+    /**  Handles menu inputs to start (against another player or against the CPU) or exit the game.
+     * Against the CPU, player 2 is rated on the ladder as "CPU" and the difficulty.
      * @param key the key value of the pressed key
      */
     private void handleMenuInput(int key) {
         if (key == KeyEvent.VK_ENTER) {
             currentGameState = STATE_PLAYING;
+        } else if (key == KeyEvent.VK_1 || key == KeyEvent.VK_2 || key == KeyEvent.VK_3) {
+            int[] budgets = {AiOpponent.EASY, AiOpponent.NORMAL, AiOpponent.HARD};
+            String[] levels = {"CPU (easy)", "CPU (normal)", "CPU (hard)"};
+            aiOpponent = new AiOpponent(budgets[key - KeyEvent.VK_1], getTickPeriodNanos());
+            gameLogic.setLadder(GenerateRooms.ladder, GenerateRooms.player1Name, levels[key - KeyEvent.VK_1]);
+            currentGameState = STATE_PLAYING;
         } else if (key == KeyEvent.VK_ESCAPE) {
             System.exit(0);
         }
     }
 
-/** Renders graphical game components to the game.
+/** Renders graphical game components to the game, and reports the painted tick to the latency tracer.
  * @param g the graphics object used for drawin components
  */
     @Override
     protected void paintComponent(Graphics g) {
+        long paintStart = System.nanoTime();
         super.paintComponent(g);
         painter.paintComponent(g);
+        long paintEnd = System.nanoTime();
+        profiler.recordPaint(paintStart, paintEnd);
+        if (currentGameState == STATE_PLAYING && latencyTracer != null) {
+            latencyTracer.frameShown(painter.getLastPaintedTick(), paintEnd);
+        }
     }
 
     /**Retrieves the currect game state (menu, or playing)
@@ -155,6 +485,56 @@ public class CombatGame extends JPanel implements ActionListener {
     public int getCurrentGameState() {
         return currentGameState;
     }
+    /** Gets the profiler timing the ticks and paints of this game.
+     *
+     * @return the tick profiler (null for arenas).
+     */
+    public TickProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * @return the feed broadcasting this game to spectators.
+     */
+    public SpectatorFeed getSpectatorFeed() {
+        return spectatorFeed;
+    }
+
+    /**
+     * @return the tracer measuring the time from key events to the frames showing them (null for arena games).
+     */
+    public LatencyTracer getLatencyTracer() {
+        return latencyTracer;
+    }
+
+    /**
+     * @return the particle system for hit sparks, dust and impacts (null for spectators).
+     */
+    public ParticleSystem getParticles() {
+        return particles;
+    }
+
+    /**
+     * @return the time between two logic ticks in nanoseconds.
+     */
+    public long getTickPeriodNanos() {
+        return tickPeriodNanos;
+    }
+
+    /**
+     * @return the AI controlling player 2, or null if player 2 is human.
+     */
+    public AiOpponent getAiOpponent() {
+        return aiOpponent;
+    }
+
+    /**
+     * @return true if the debug overlay (toggled with F3) should be drawn.
+     */
+    public boolean isDebugOverlayVisible() {
+        return debugOverlayVisible;
+    }
+
     /** Gets the background image used in the game
      * 
      * @return the background image (as BufferedImage).
@@ -165,11 +545,25 @@ public class CombatGame extends JPanel implements ActionListener {
 
      /** Gets the player sprites.
       * 
-      * @return a 2d array of bufferedimage objects representing player sprites (the rows = which state, the colomns = which frame)
+      * @return a 2d array of cropped sprite frames representing player sprites (the rows = which state, the colomns = which frame)
       */
-    public BufferedImage[][] getPlayerSprites() {
+    public SpriteStore.Frame[][] getPlayerSprites() {
         return playerSprites;
     }
+    /** Gets the collision masks of the player sprites, used for pixel-accurate hits.
+     * 
+     * @return the masks, indexed by state, frame and facing direction (see CollisionMask).
+     */
+    public CollisionMask[][][] getCollisionMasks() {
+        return collisionMasks;
+    }
+    /** Gets the collision geometry of the stage: its bounds, floors, walls, platforms and hazards.
+     * 
+     * @return the stage.
+     */
+    public Stage getStage() {
+        return stage;
+    }
     /** 
      * @return the width of the character (total number of pixels represents the integer).
      */
@@ -187,23 +581,40 @@ public class CombatGame extends JPanel implements ActionListener {
 /**
  *  The main method to start the game. It loads up the room data, initializes the explorepreface section
  * of the game, and if successful, starts the main game window.
- * @param args command-line arguments (not used.)
+ * With "--synthetic [seconds]" the preface and menu are skipped and a scripted player 1 plays instead, after which
+ * the input-to-display latency report is printed (see SyntheticInput).
+ * @param args command-line arguments (optionally --synthetic and the number of seconds to run.)
  */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--synthetic")) {
+            int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+            SwingUtilities.invokeLater(() -> {
+                CombatGame game = openWindow();
+                game.currentGameState = STATE_PLAYING;
+                new SyntheticInput(game, 42).start(seconds);
+            });
+            return;
+        }
+
         Map<String, Room> rooms = GenerateRooms.generateRoomsFromFile("Rooms.txt");
 
         if (GenerateRooms.explorePreface(rooms)) {
-            SwingUtilities.invokeLater(() -> {
-                JFrame frame = new JFrame("Arena");
-                frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-                CombatGame game = new CombatGame();
-                frame.add(game);
-                frame.pack();
-                frame.setLocationRelativeTo(null);
-                frame.setVisible(true);
-            });
+            SwingUtilities.invokeLater(CombatGame::openWindow);
         }
     }
-}
-
 
+/**
+ * Creates the game window with a new CombatGame in it. Must be called on the EDT.
+ * @return the game shown in the window.
+ */
+    private static CombatGame openWindow() {
+        JFrame frame = new JFrame("Arena");
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        CombatGame game = new CombatGame();
+        frame.add(game);
+        frame.pack();
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+        return game;
+    }
+}
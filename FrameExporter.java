@@ -0,0 +1,389 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+
+/** FrameExporter renders a match offscreen, frame by frame, and encodes the frames to a PNG sequence or to a raw
+ * RGB stream (24 bits per pixel, e.g. for ffmpeg -f rawvideo -pixel_format rgb24 -video_size 800x600).
+ *
+ * The frames are painted by GamePainter exactly like on screen, particles included, into a small pool of images.
+ * The render thread hands each painted image through a bounded queue to the encoder threads and takes the next free
+ * image from the pool, so painting a frame overlaps with encoding the previous ones. When the encoders fall behind, the renderer
+ * waits for a free image instead of dropping a frame, and the memory stays bounded by the pool. PNG frames are
+ * separate files and raw frames have a fixed size and are written at their own offset in the stream, so the
+ * encoders work in parallel, in any order.
+ *
+ * A match is exported from an InputRecording, replayed as fast as the frames can be encoded, or live from a running
+ * game through its SpectatorFeed (F4 in the game). Frames are painted at framesPerTick fixed points of each tick,
+ * interpolated like on screen. A replay simulates its own particles; a live export copies the game's particles
+ * along with each tick. The ticks of a live export wait in a fixed pool of LIVE_TICKS slots: when the exporter
+ * falls that far behind, further ticks are dropped (and counted in the report) instead of piling up.
+ *
+ * Run with: java -Djava.awt.headless=true FrameExporter match.rec output [png|raw] [framesPerTick] [encoders]
+ */
+public class FrameExporter {
+
+    static final int FORMAT_PNG = 0;
+    static final int FORMAT_RAW = 1;
+    static final int WIDTH = 800;
+    static final int HEIGHT = 600;
+    private static final int END_TICKS = 60; // A replay keeps showing the result for a while after the match
+    private static final float PNG_QUALITY = 0.85f; // Deflate level 1: a third faster than the default, 3% larger
+    private static final int LIVE_TICKS = 64; // Ticks a live export may fall behind (~2 s at 30 ticks/s)
+
+    /** A pooled image and the number of the frame painted into it. */
+    private static class Frame {
+        private final BufferedImage image;
+        private long number;
+
+        Frame(BufferedImage image) {
+            this.image = image;
+        }
+    }
+
+    private static final Frame END = new Frame(null); // Tells an encoder to stop
+
+    /** A tick of a live export: its snapshot and the particles of the game at that tick. */
+    private static class LiveTick {
+        private GameSnapshot snapshot;
+        private int[] xs = new int[256], ys = new int[256], colors = new int[256];
+        private int particleCount;
+    }
+
+    // fields
+    private final File output;
+    private final int format;
+    private final int framesPerTick;
+    private final long tickPeriodNanos;
+    private final CombatGame canvas;
+    private final ParticleSystem particles;
+    private final ArrayBlockingQueue<Frame> freeFrames;
+    private final ArrayBlockingQueue<Frame> paintedFrames;
+    private final Thread[] encoders;
+    private FileChannel channel;
+    private volatile IOException error;
+
+    private long frameCount;
+    private long paintNanos, stallNanos;
+    private final LongAdder encodeNanos = new LongAdder();
+    private long startNanos, endNanos;
+
+    private SpectatorFeed liveFeed;
+    private SpectatorFeed.Subscriber liveSubscriber;
+    private Thread liveRenderer;
+    private volatile boolean liveStopping;
+    private volatile long droppedTicks;
+
+    /** Constructs an exporter and starts its encoder threads.
+     *
+     * @param output the directory for the PNG sequence, or the file for the raw stream.
+     * @param format FORMAT_PNG or FORMAT_RAW.
+     * @param encoderCount the number of encoder threads.
+     * @param tickPeriodNanos the time between two ticks of the match.
+     * @param framesPerTick the number of frames painted per tick (e.g. 2 for a 60 fps video of a 30 ticks/s match).
+     * @throws IOException if the output cannot be created.
+     */
+    public FrameExporter(File output, int format, int encoderCount, long tickPeriodNanos, int framesPerTick)
+            throws IOException {
+        this.output = output;
+        this.format = format;
+        this.framesPerTick = framesPerTick;
+        this.tickPeriodNanos = tickPeriodNanos;
+        if (format == FORMAT_PNG) {
+            if (!output.isDirectory() && !output.mkdirs()) {
+                throw new IOException("Cannot create " + output);
+            }
+        } else {
+            channel = FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        canvas = new CombatGame(tickPeriodNanos);
+        particles = new ParticleSystem(CombatGame.PARTICLE_CAPACITY);
+        canvas.setParticles(particles);
+
+        // One image being painted, one per encoder being encoded, and one queued per encoder
+        int poolSize = 2 * encoderCount + 1;
+        freeFrames = new ArrayBlockingQueue<>(poolSize);
+        paintedFrames = new ArrayBlockingQueue<>(poolSize + encoderCount);
+        for (int i = 0; i < poolSize; i++) {
+            freeFrames.add(new Frame(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB)));
+        }
+        encoders = new Thread[encoderCount];
+        for (int i = 0; i < encoderCount; i++) {
+            encoders[i] = new Thread(this::encodeFrames, "frame-encoder-" + (i + 1));
+            encoders[i].start();
+        }
+        startNanos = System.nanoTime();
+    }
+
+    /** Replays a recorded match and exports all of its frames. Returns when the last frame is queued for encoding,
+     * call finish to wait for the encoders.
+     *
+     * @param recording the recorded inputs of the match.
+     * @throws InterruptedException if interrupted while waiting for a free image.
+     */
+    public void exportReplay(InputRecording recording) throws InterruptedException {
+        canvas.setReplay(recording);
+        long tickNanos = 0;
+        for (int tick = 0; tick < recording.getTickCount() + END_TICKS; tick++) {
+            tickNanos += tickPeriodNanos;
+            canvas.tick(tickNanos);
+            GameSnapshot[] latest = canvas.getLatestSnapshots();
+            paintTick(latest[0], latest[1]);
+        }
+    }
+
+    /** Starts exporting a running game: every tick's snapshot is received from its SpectatorFeed (on its logic
+     * thread, which is never blocked), copied into a free slot together with the game's particles and queued for the
+     * render thread. When no slot is free the tick is dropped. Call finish to stop.
+     *
+     * @param game the game to export.
+     */
+    public void startLive(CombatGame game) {
+        ArrayBlockingQueue<LiveTick> freeTicks = new ArrayBlockingQueue<>(LIVE_TICKS);
+        ArrayBlockingQueue<LiveTick> queuedTicks = new ArrayBlockingQueue<>(LIVE_TICKS);
+        for (int i = 0; i < LIVE_TICKS; i++) {
+            freeTicks.add(new LiveTick());
+        }
+        ParticleSystem gameParticles = game.getParticles();
+        SpectatorCodec codec = new SpectatorCodec();
+        liveSubscriber = new SpectatorFeed.Subscriber() {
+            private GameSnapshot last;
+
+            @Override
+            public void onFrame(ByteBuffer frame) {
+                GameSnapshot snapshot = codec.decode(last, frame, System.nanoTime());
+                if (snapshot == null) {
+                    return;
+                }
+                last = snapshot; // Decoded even if dropped, the next frame is a delta to it
+                LiveTick tick = freeTicks.poll();
+                if (tick == null) {
+                    droppedTicks++; // Only written on the game's logic thread
+                    return;
+                }
+                tick.snapshot = snapshot;
+                tick.particleCount = 0;
+                if (gameParticles != null) {
+                    int count = gameParticles.getCount();
+                    if (tick.xs.length < count) {
+                        int capacity = Math.max(count, tick.xs.length * 2);
+                        tick.xs = Arrays.copyOf(tick.xs, capacity);
+                        tick.ys = Arrays.copyOf(tick.ys, capacity);
+                        tick.colors = Arrays.copyOf(tick.colors, capacity);
+                    }
+                    tick.particleCount = gameParticles.render(tick.xs, tick.ys, tick.colors);
+                }
+                queuedTicks.offer(tick);
+            }
+        };
+        liveFeed = game.getSpectatorFeed();
+        liveFeed.subscribe(liveSubscriber);
+
+        liveRenderer = new Thread(() -> {
+            GameSnapshot previous = null;
+            try {
+                while (true) {
+                    LiveTick tick = queuedTicks.poll(100, TimeUnit.MILLISECONDS);
+                    if (tick == null) {
+                        if (liveStopping && queuedTicks.isEmpty()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    GameSnapshot current = tick.snapshot;
+                    particles.show(tick.xs, tick.ys, tick.colors,
+                            Math.min(tick.particleCount, particles.getCapacity()));
+                    freeTicks.put(tick);
+                    paintTick(previous != null ? previous : current, current);
+                    previous = current;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }, "frame-renderer");
+        liveRenderer.start();
+    }
+
+    /** Stops a live export (the snapshots already received are still exported), waits until all frames are
+     * encoded and closes the output.
+     *
+     * @throws IOException if a frame could not be written.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void finish() throws IOException, InterruptedException {
+        if (liveFeed != null) {
+            liveFeed.unsubscribe(liveSubscriber);
+            liveStopping = true;
+            liveRenderer.join();
+        }
+        for (int i = 0; i < encoders.length; i++) {
+            paintedFrames.put(END);
+        }
+        for (Thread encoder : encoders) {
+            encoder.join();
+        }
+        endNanos = System.nanoTime();
+        if (channel != null) {
+            channel.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * @return the number of frames exported.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return the number of ticks a live export dropped because it had fallen LIVE_TICKS ticks behind.
+     */
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+
+    /** Describes a finished export: the frames, the speed compared to the match, where the time went and, for a live
+     * export, the ticks dropped.
+     *
+     * @return the description.
+     */
+    public String report() {
+        double seconds = (endNanos - startNanos) / 1e9;
+        double matchSeconds = frameCount * (tickPeriodNanos / 1e9) / framesPerTick;
+        return String.format("%d frames to %s in %.2f s (%.1f fps, %.1fx real time)%n"
+                + "paint %.2f ms/frame, encode %.2f ms/frame on %d threads, renderer waited %.2f s for free images%s",
+                frameCount, output, seconds, frameCount / seconds, matchSeconds / seconds,
+                paintNanos / 1e6 / Math.max(1, frameCount), encodeNanos.sum() / 1e6 / Math.max(1, frameCount),
+                encoders.length, stallNanos / 1e9,
+                liveFeed != null ? String.format("%n%d ticks dropped (fell behind)", droppedTicks) : "");
+    }
+
+    /** Paints the frames of one tick, at evenly spaced points between the previous tick and this one.
+     */
+    private void paintTick(GameSnapshot previous, GameSnapshot current) throws InterruptedException {
+        for (int i = 1; i <= framesPerTick; i++) {
+            paintFrame(previous, current, i / (double) framesPerTick);
+        }
+    }
+
+    /** Paints a frame into a free image (waiting for one if the encoders are behind) and queues it for encoding.
+     */
+    private void paintFrame(GameSnapshot previous, GameSnapshot current, double alpha) throws InterruptedException {
+        long start = System.nanoTime();
+        Frame frame = freeFrames.take();
+        long paintStart = System.nanoTime();
+        stallNanos += paintStart - start;
+
+        Graphics2D g = frame.image.createGraphics();
+        canvas.paintSnapshots(g, previous, current, alpha);
+        g.dispose();
+        frame.number = frameCount++;
+        paintNanos += System.nanoTime() - paintStart;
+        paintedFrames.put(frame);
+    }
+
+    /** Encodes painted frames until told to stop. After an error the frames are only recycled, so the renderer
+     * never waits forever.
+     */
+    private void encodeFrames() {
+        byte[] rgb = format == FORMAT_RAW ? new byte[WIDTH * HEIGHT * 3] : null;
+        ImageWriter pngWriter = ImageIO.getImageWritersByFormatName("png").next();
+        ImageWriteParam pngParam = pngWriter.getDefaultWriteParam();
+        pngParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        pngParam.setCompressionQuality(PNG_QUALITY);
+        try {
+            while (true) {
+                Frame frame = paintedFrames.take();
+                if (frame == END) {
+                    return;
+                }
+                long start = System.nanoTime();
+                if (error == null) {
+                    try {
+                        write(frame, rgb, pngWriter, pngParam);
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                }
+                encodeNanos.add(System.nanoTime() - start);
+                freeFrames.put(frame);
+            }
+        } catch (InterruptedException e) {
+            return;
+        } finally {
+            pngWriter.dispose();
+        }
+    }
+
+    /** Writes a frame as frame-000000.png, or as 3 bytes per pixel at its offset in the raw stream.
+     */
+    private void write(Frame frame, byte[] rgb, ImageWriter pngWriter, ImageWriteParam pngParam) throws IOException {
+        if (format == FORMAT_PNG) {
+            File file = new File(output, String.format("frame-%06d.png", frame.number));
+            file.delete(); // FileImageOutputStream does not truncate
+            try (ImageOutputStream out = new FileImageOutputStream(file)) {
+                pngWriter.setOutput(out);
+                pngWriter.write(null, new IIOImage(frame.image, null, null), pngParam);
+            }
+            return;
+        }
+        int[] pixels = ((DataBufferInt) frame.image.getRaster().getDataBuffer()).getData();
+        for (int i = 0, j = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            rgb[j++] = (byte) (pixel >> 16);
+            rgb[j++] = (byte) (pixel >> 8);
+            rgb[j++] = (byte) pixel;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(rgb);
+        long position = frame.number * rgb.length;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /** Exports a recorded match and prints how fast it went.
+     *
+     * @param args the recording, the output, png or raw (default png), the frames per tick (default 1) and the
+     * number of encoder threads (default the number of cores).
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: java FrameExporter match.rec output [png|raw] [framesPerTick] [encoders]");
+            return;
+        }
+        InputRecording recording = InputRecording.read(args[0]);
+        int format = args.length > 2 && args[2].equals("raw") ? FORMAT_RAW : FORMAT_PNG;
+        int framesPerTick = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        int encoderCount = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        FrameExporter exporter = new FrameExporter(new File(args[1]), format, encoderCount,
+                recording.getTickPeriodNanos(), framesPerTick);
+        exporter.exportReplay(recording);
+        exporter.finish();
+        System.out.println(exporter.report());
+        if (format == FORMAT_RAW) {
+            double fps = framesPerTick * 1e9 / recording.getTickPeriodNanos();
+            System.out.printf("e.g. ffmpeg -f rawvideo -pixel_format rgb24 -video_size %dx%d -framerate %.0f -i %s "
+                    + "match.mp4%n", WIDTH, HEIGHT, fps, args[1]);
+        }
+    }
+}
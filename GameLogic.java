@@ -1,26 +1,32 @@
 import java.awt.event.KeyEvent;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
  
 
 /** GameLogic manages the user inputs, their corresponding animation states, game physics,
  *interactions between the players, health tracking and win conditions (everytime GameTick is called in the CombatGame class)
- * It is also here that each win is updateted/logged on a txt file (Wins.txt)
+ * It is also here that each win is updateted/logged on a txt file (Wins.txt), and rated on the Ladder
  * 
  *  @author Adam Abdulmajid
  */
 
 public class GameLogic {
     private CombatGame game;
+    private TickProfiler profiler;
+    private ParticleSystem particles;
+    private WinLog winLog;
+    private Ladder ladder;
+    private InputRecording recording;
+    private String player1Name = "Player 1";
+    private String player2Name = "Player 2";
+    private boolean simulation = false;
 
     // fields
     private int player1Health = 100;
     private int player2Health = 100;
-    private double player1VelocityY = 0;
-    private double player2VelocityY = 0;
-    private int player1X = 50, player2X = 400;
-    private int player1Y = 340, player2Y = 340;
+    // Positions and velocities are in FixedPhysics sub-pixel units, the getters convert them to pixels
+    private int player1VelocityY = 0;
+    private int player2VelocityY = 0;
+    private int player1X = FixedPhysics.toFixed(50), player2X = FixedPhysics.toFixed(400);
+    private int player1Y = FixedPhysics.GROUND_LEVEL, player2Y = FixedPhysics.GROUND_LEVEL;
     private boolean player1MovingLeft, player1MovingRight;
     private boolean player2MovingLeft, player2MovingRight;
     private boolean player1Jumping, player2Jumping;
@@ -33,10 +39,17 @@ public class GameLogic {
     private int player1Frame = 0;
     private int player2Frame = 0;
 
-    private final double gravity = 0.4;
-    private final double jumpSpeed = 8;
+    private final int gravity = FixedPhysics.GRAVITY;
+    private final int jumpSpeed = FixedPhysics.JUMP_SPEED;
+    private final int runSpeed = FixedPhysics.RUN_SPEED;
     private final int baseDamage = 10;
-    private final int groundLevel = 340;
+    private final int hazardInterval = 15; // Ticks between two hurts by a hazard
+    private int player1HazardCooldown, player2HazardCooldown;
+
+    // Where the body is inside the (3x scaled) sprite, relative to the player position, for placing effects
+    private final int bodyOffsetX = 300;
+    private final int chestOffsetY = 70;
+    private final int feetOffsetY = 163;
     private boolean gameEnded = false;
     private String resultMessage = "";
 
@@ -53,12 +66,97 @@ public class GameLogic {
     public GameLogic(CombatGame game) {
         this.game = game;
     }
+
+    /** Creates a copy of this game state for look-ahead simulations (used by the AiOpponent).
+     * The copy is never profiled, spawns no particles and does not log or rate its result.
+     *
+     * @return an independent copy of the current state
+     */
+    public GameLogic copy() {
+        GameLogic copy = new GameLogic(game);
+        copy.simulation = true;
+        copy.player1Health = player1Health;
+        copy.player2Health = player2Health;
+        copy.player1VelocityY = player1VelocityY;
+        copy.player2VelocityY = player2VelocityY;
+        copy.player1X = player1X;
+        copy.player2X = player2X;
+        copy.player1Y = player1Y;
+        copy.player2Y = player2Y;
+        copy.player1MovingLeft = player1MovingLeft;
+        copy.player1MovingRight = player1MovingRight;
+        copy.player2MovingLeft = player2MovingLeft;
+        copy.player2MovingRight = player2MovingRight;
+        copy.player1Jumping = player1Jumping;
+        copy.player2Jumping = player2Jumping;
+        copy.player1Attacking = player1Attacking;
+        copy.player2Attacking = player2Attacking;
+        copy.player1FacingRight = player1FacingRight;
+        copy.player2FacingRight = player2FacingRight;
+        copy.player1State = player1State;
+        copy.player2State = player2State;
+        copy.player1Frame = player1Frame;
+        copy.player2Frame = player2Frame;
+        copy.player1HazardCooldown = player1HazardCooldown;
+        copy.player2HazardCooldown = player2HazardCooldown;
+        copy.gameEnded = gameEnded;
+        copy.resultMessage = resultMessage;
+        return copy;
+    }
+
+    /** Sets the particle system that shows hits, jumps and landings. Without one, no effects are spawned.
+     *
+     * @param particles the particle system to spawn into (or null).
+     */
+    public void setParticles(ParticleSystem particles) {
+        this.particles = particles;
+    }
+
+    /** Sets the log the result of the match is appended to.
+     *
+     * @param winLog the log (or null to not log the result).
+     */
+    public void setWinLog(WinLog winLog) {
+        this.winLog = winLog;
+    }
+
+    /** Sets the ladder the result of the match is rated on, and the names of the players.
+     *
+     * @param ladder the ladder (or null to not rate the match).
+     * @param player1Name the name of player 1.
+     * @param player2Name the name of player 2.
+     */
+    public void setLadder(Ladder ladder, String player1Name, String player2Name) {
+        this.ladder = ladder;
+        this.player1Name = player1Name;
+        this.player2Name = player2Name;
+    }
+
+    /** Sets the recording the applied key events are recorded into. Must be set before the first tick, so the
+     * recording starts with the match.
+     *
+     * @param recording the recording (or null to not record).
+     */
+    public void setInputRecording(InputRecording recording) {
+        this.recording = recording;
+    }
+
+    /** Sets the profiler that times each phase of onGameTick. Without one, ticks are not timed.
+     *
+     * @param profiler the profiler to record into (or null).
+     */
+    public void setProfiler(TickProfiler profiler) {
+        this.profiler = profiler;
+    }
     /** Process the player inputs to control different movements (single keys or combinations)
      * 
      * @param key the key code representing the action
      * @param pressed true if the key is pressed
      */
     public void handlePlayerInput(int key, boolean pressed) {
+        if (recording != null) {
+            recording.record(key, pressed);
+        }
         if (!gameEnded) {
             switch (key) {
                 case KeyEvent.VK_A: // Player 1 move left
@@ -142,50 +240,93 @@ public class GameLogic {
     }
     
     /** The jumping physics to the players; updating their position based on gravity and checking if they have landed
+     * on a floor, wall or platform of the stage (or hit their head on one). A player walking off a platform starts
+     * falling. All values are in fixed-point sub-pixel units, so the result is exact and the same on every machine.
      * 
      * @param player the player number (1 or 2).
      */
     private void applyJumpingPhysics(int player) {
-        double velocityY = (player == 1) ? player1VelocityY : player2VelocityY;
+        int velocityY = (player == 1) ? player1VelocityY : player2VelocityY;
+        int playerX = (player == 1) ? player1X : player2X;
         int playerY = (player == 1) ? player1Y : player2Y;
         boolean jumping = (player == 1) ? player1Jumping : player2Jumping;
-    
-        if (jumping) {
-            // Update position and velocity
-            playerY += velocityY;
-            velocityY += gravity;
-    
-            // Check if the player has landed
-            if (playerY >= groundLevel) {
-                playerY = groundLevel;
-                velocityY = 0; // Reset velocity upon landing
-                jumping = false; // End jumping state
-
-                // Update state based on movement
-                if ((player == 1 && (player1MovingLeft || player1MovingRight)) || 
-                    (player == 2 && (player2MovingLeft || player2MovingRight))) {
-                    updatePlayerState(player);
-                } 
-                else {
-                    if (player == 1) {
-                        player1State = STATE_IDLE;
-                    } else {
-                        player2State = STATE_IDLE;
-                    }
-                }
-            }
+        Stage stage = game.getStage();
+        int left = playerX + FixedPhysics.BODY_LEFT;
+        int right = playerX + FixedPhysics.BODY_RIGHT;
 
-            // Update player-specific variables
+        if (!jumping) {
+            int feet = playerY + FixedPhysics.FEET;
+            if (feet >= stage.getBottom() || stage.landingTop(left, right, feet, feet) == feet) {
+                return; // Standing on something
+            }
+            jumping = true; // Walked off, fall from standing still
+            velocityY = 0;
             if (player == 1) {
-                player1Y = playerY;
-                player1VelocityY = velocityY;
-                player1Jumping = jumping;
+                player1State = STATE_JUMP;
             } else {
-                player2Y = playerY;
-                player2VelocityY = velocityY;
-                player2Jumping = jumping;
+                player2State = STATE_JUMP;
+            }
+        }
+
+        // Update position and velocity
+        int newY = playerY + velocityY;
+        velocityY += gravity;
+        boolean landed = false;
+
+        if (newY > playerY) {
+            // Check if the player has landed, the bottom of the stage is a floor as well
+            int landing = stage.landingTop(left, right, playerY + FixedPhysics.FEET, newY + FixedPhysics.FEET);
+            int bottom = stage.getBottom();
+            if (newY + FixedPhysics.FEET >= bottom && (landing == Stage.NONE || landing > bottom)) {
+                landing = bottom;
+            }
+            if (landing != Stage.NONE) {
+                newY = landing - FixedPhysics.FEET;
+                landed = true;
+            }
+        } else if (newY < playerY) {
+            // Check if the player hit their head, the top of the stage is a ceiling as well
+            int ceiling = stage.ceilingBottom(left, right, playerY + FixedPhysics.BODY_TOP,
+                    newY + FixedPhysics.BODY_TOP);
+            if (ceiling == Stage.NONE && newY + FixedPhysics.BODY_TOP < stage.getTop()) {
+                ceiling = stage.getTop();
+            }
+            if (ceiling != Stage.NONE) {
+                newY = ceiling - FixedPhysics.BODY_TOP;
+                velocityY = 0; // Fall from here
             }
         }
+        playerY = newY;
+
+        if (landed) {
+            velocityY = 0; // Reset velocity upon landing
+            jumping = false; // End jumping state
+            spawnDust(playerX, playerY, 24);
+
+            // Update state based on movement
+            if ((player == 1 && (player1MovingLeft || player1MovingRight)) || 
+                (player == 2 && (player2MovingLeft || player2MovingRight))) {
+                updatePlayerState(player);
+            } 
+            else {
+                if (player == 1) {
+                    player1State = STATE_IDLE;
+                } else {
+                    player2State = STATE_IDLE;
+                }
+            }
+        }
+
+        // Update player-specific variables
+        if (player == 1) {
+            player1Y = playerY;
+            player1VelocityY = velocityY;
+            player1Jumping = jumping;
+        } else {
+            player2Y = playerY;
+            player2VelocityY = velocityY;
+            player2Jumping = jumping;
+        }
     }
         /**
          * Initiate the jumping action for a player (if not already jumping).
@@ -196,25 +337,52 @@ public class GameLogic {
             player1Jumping = true;
             player1VelocityY = -jumpSpeed;
             player1State = STATE_JUMP;
+            spawnDust(player1X, player1Y, 12);
         } else if (player == 2 && !player2Jumping) {
             player2Jumping = true;
             player2VelocityY = -jumpSpeed;
             player2State = STATE_JUMP;
+            spawnDust(player2X, player2Y, 12);
         }
     }
     
           /**
-           * Updates the position on the y-axis based on player movement
+           * Updates the position on the x-axis based on player movement
            */
     public void updatePositions() {
-        if (player1MovingLeft) player1X -= 5;
-        if (player1MovingRight) player1X += 5;
-        if (player2MovingLeft) player2X -= 5;
-        if (player2MovingRight) player2X += 5;
+        player1X = moveHorizontally(player1X, player1Y, player1MovingLeft, player1MovingRight);
+        player2X = moveHorizontally(player2X, player2Y, player2MovingLeft, player2MovingRight);
     }
 
     /**
-     * Checks if two players are colliding based on their cordinates
+     * Moves a player on the x-axis until they run into a wall (or floor) of the stage, and keeps them inside
+     * the stage bounds.
+     * @param x the x-coordinate of the player
+     * @param y the y-coordinate of the player
+     * @param movingLeft true if the player runs left
+     * @param movingRight true if the player runs right
+     * @return the new x-coordinate
+     */
+    private int moveHorizontally(int x, int y, boolean movingLeft, boolean movingRight) {
+        Stage stage = game.getStage();
+        int top = y + FixedPhysics.BODY_TOP;
+        int feet = y + FixedPhysics.FEET;
+        int move = (movingRight ? runSpeed : 0) - (movingLeft ? runSpeed : 0);
+        if (move > 0) {
+            int right = x + FixedPhysics.BODY_RIGHT;
+            int wall = stage.wallRight(top, feet, right, right + move);
+            x = wall == Stage.NONE ? x + move : wall - FixedPhysics.BODY_RIGHT;
+        } else if (move < 0) {
+            int left = x + FixedPhysics.BODY_LEFT;
+            int wall = stage.wallLeft(top, feet, left, left + move);
+            x = wall == Stage.NONE ? x + move : wall - FixedPhysics.BODY_LEFT;
+        }
+        x = Math.min(x, stage.getRight() - FixedPhysics.BODY_RIGHT);
+        return Math.max(x, stage.getLeft() - FixedPhysics.BODY_LEFT);
+    }
+
+    /**
+     * Checks if two players are colliding based on their cordinates (in sub-pixel units)
      * 
      * @param x1 the x-coordinate for player 1
      * @param y1 the y-coordinate for player 1
@@ -223,22 +391,114 @@ public class GameLogic {
      * @return true if the players are colliding
      */
     private boolean isColliding(int x1, int y1, int x2, int y2) {
-        return Math.abs(x1 - x2) < game.getCharacterWidth() && Math.abs(y1 - y2) < game.getCharacterHeight();
+        return Math.abs(x1 - x2) < FixedPhysics.toFixed(game.getCharacterWidth())
+                && Math.abs(y1 - y2) < FixedPhysics.toFixed(game.getCharacterHeight());
+    }
+
+    /**
+     * Checks if the current sprite frames of the two players overlap pixel by pixel, using the collision masks
+     * built from the sprites. Falls back to isColliding if the masks are not available.
+     * 
+     * @param attacker the player number of the attacking player
+     * @return true if the attacker's sprite touches the other player's sprite
+     */
+    private boolean isHitting(int attacker) {
+        CollisionMask attackerMask = currentMask(attacker);
+        CollisionMask defenderMask = currentMask(attacker == 1 ? 2 : 1);
+        if (attackerMask == null || defenderMask == null) {
+            return isColliding(player1X, player1Y, player2X, player2Y);
+        }
+        // Both sprites are drawn at the same scale, so the offset between them is converted into mask pixels
+        int pixelsPerMaskPixel = FixedPhysics.toFixed(CombatGame.SPRITE_SCALE);
+        int offsetX = (attacker == 1 ? player2X - player1X : player1X - player2X);
+        int offsetY = (attacker == 1 ? player2Y - player1Y : player1Y - player2Y);
+        return CollisionMask.overlaps(attackerMask, defenderMask,
+                Math.floorDiv(offsetX, pixelsPerMaskPixel), Math.floorDiv(offsetY, pixelsPerMaskPixel));
+    }
+
+    /**
+     * Gets the collision mask of the sprite frame a player currently shows.
+     * @param player the player number
+     * @return the mask, or null if there are no masks (e.g. the sprites failed to load)
+     */
+    private CollisionMask currentMask(int player) {
+        CollisionMask[][][] masks = game.getCollisionMasks();
+        int state = (player == 1) ? player1State : player2State;
+        if (masks == null || masks[state] == null) {
+            return null;
+        }
+        int frame = ((player == 1) ? player1Frame : player2Frame) % masks[state].length; // The state may have just changed
+        boolean facingRight = (player == 1) ? player1FacingRight : player2FacingRight;
+        return masks[state][frame][facingRight ? CollisionMask.FACING_RIGHT : CollisionMask.FACING_LEFT];
+    }
+
+    /**
+     * Hurts the players touching a hazard of the stage, once every hazardInterval ticks while they touch it.
+     */
+    public void applyHazards() {
+        if (gameEnded) {
+            return;
+        }
+        Stage stage = game.getStage();
+        int damage1 = stage.hazardDamage(player1X + FixedPhysics.BODY_LEFT, player1Y + FixedPhysics.BODY_TOP,
+                player1X + FixedPhysics.BODY_RIGHT, player1Y + FixedPhysics.FEET);
+        int damage2 = stage.hazardDamage(player2X + FixedPhysics.BODY_LEFT, player2Y + FixedPhysics.BODY_TOP,
+                player2X + FixedPhysics.BODY_RIGHT, player2Y + FixedPhysics.FEET);
+        if (player1HazardCooldown > 0) {
+            player1HazardCooldown--;
+        } else if (damage1 > 0) {
+            player1Health -= damage1;
+            player1HazardCooldown = hazardInterval;
+        }
+        if (player2HazardCooldown > 0) {
+            player2HazardCooldown--;
+        } else if (damage2 > 0) {
+            player2Health -= damage2;
+            player2HazardCooldown = hazardInterval;
+        }
     }
+
     /**
-     * Applying damage if players are attacing and within attacing range. Uses isColliding method.
+     * Applying damage if players are attacing and their sprites touch. Uses isHitting method.
      */
     public void handleAttacks() {
-        if (player1Attacking && isColliding(player1X, player1Y, player2X, player2Y)) {
+        if (player1Attacking && isHitting(1)) {
             player2Health -= baseDamage;
             player1Attacking = false;
+            spawnHit(player1X, player1Y, player2X, player2Y);
         }
-        if (player2Attacking && isColliding(player2X, player2Y, player1X, player1Y)) {
+        if (player2Attacking && isHitting(2)) {
             player1Health -= baseDamage;
             player2Attacking = false;
+            spawnHit(player2X, player2Y, player1X, player1Y);
         }
     }
 
+    /** Spawns the sparks and the impact flash of a landed hit, between the attacker and the defender.
+     * Coordinates are in sub-pixel units.
+     */
+    private void spawnHit(int attackerX, int attackerY, int defenderX, int defenderY) {
+        if (particles == null) {
+            return;
+        }
+        float hitX = (FixedPhysics.toPixels(attackerX) + FixedPhysics.toPixels(defenderX)) / 2f + bodyOffsetX;
+        float hitY = (FixedPhysics.toPixels(attackerY) + FixedPhysics.toPixels(defenderY)) / 2f + chestOffsetY;
+        int direction = defenderX >= attackerX ? 1 : -1;
+        particles.spawnBurst(ParticleSystem.KIND_SPARK, hitX, hitY, 60, direction);
+        particles.spawnBurst(ParticleSystem.KIND_IMPACT, hitX, hitY, 40, 0);
+    }
+
+    /** Spawns a puff of dust at the feet of a player (coordinates in sub-pixel units).
+     */
+    private void spawnDust(int playerX, int playerY, int amount) {
+        if (particles == null) {
+            return;
+        }
+        float feetX = FixedPhysics.toPixels(playerX) + bodyOffsetX;
+        float feetY = FixedPhysics.toPixels(playerY) + feetOffsetY;
+        particles.spawnBurst(ParticleSystem.KIND_DUST, feetX, feetY, amount, 0);
+    }
+
 
     /**
      * Checks the "gameOver" condition based on player health. Logs the game result if either player's health reacher 0
@@ -250,12 +510,18 @@ public class GameLogic {
         if (player1Health <= 0) {
             gameEnded = true;
             resultMessage = "Player 2 Wins!";
-            appendWinToFile(resultMessage);
+            if (!simulation) {
+                appendWinToFile(resultMessage);
+                rateMatch(player2Name, player1Name);
+            }
 
         } else if (player2Health <= 0) {
             gameEnded = true;
             resultMessage = "Player 1 Wins!";
-            appendWinToFile(resultMessage);
+            if (!simulation) {
+                appendWinToFile(resultMessage);
+                rateMatch(player1Name, player2Name);
+            }
             
         }
     
@@ -263,18 +529,27 @@ public class GameLogic {
     }
 
     /**
-     * Appends the game results to the Wins.txt file
+     * Appends the game results to the win log (Wins.txt and its sealed segments, see WinLog), if one is set
      * 
      * @param message the game result message to log
      */
     private void appendWinToFile(String message){
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter("Wins.txt",true))){
-            writer.write(message);
-            writer.newLine();
+        if (winLog != null) {
+            winLog.append(message);
+        }
+    }
 
-        }catch(IOException e){
-            e.printStackTrace();
-          }
+    /**
+     * Records the result on the ladder (if one is set). The new ratings are shown by the "log" and "rank" commands.
+     * 
+     * @param winner the name of the winner
+     * @param loser the name of the loser
+     */
+    private void rateMatch(String winner, String loser) {
+        if (ladder == null) {
+            return;
+        }
+        ladder.recordMatch(winner, loser);
     }
 
     /**
@@ -309,24 +584,69 @@ public class GameLogic {
     }
 
     /**
-     * Called on each game tick to update game logics
+     * Called on each game tick to update game logics. Each phase is timed if a profiler is set.
      */
     public void onGameTick() {
+        long tickStart = profiler != null ? System.nanoTime() : 0;
+        long phaseStart = tickStart;
         applyPhysics();
+        phaseStart = recordPhase(TickProfiler.PHASE_PHYSICS, phaseStart);
         updatePositions();
+        phaseStart = recordPhase(TickProfiler.PHASE_POSITIONS, phaseStart);
         handleAttacks();
+        phaseStart = recordPhase(TickProfiler.PHASE_ATTACKS, phaseStart);
+        applyHazards();
+        phaseStart = recordPhase(TickProfiler.PHASE_HAZARDS, phaseStart);
         updateFrames();
+        phaseStart = recordPhase(TickProfiler.PHASE_FRAMES, phaseStart);
         checkGameOver();
+        phaseStart = recordPhase(TickProfiler.PHASE_GAME_OVER, phaseStart);
+        if (particles != null) {
+            particles.update();
+        }
+        recordPhase(TickProfiler.PHASE_PARTICLES, phaseStart);
+        recordPhase(TickProfiler.PHASE_TICK, tickStart);
+        if (recording != null) {
+            recording.endTick();
+        }
+    }
+
+    /** Records the time since phaseStart for the given phase (if a profiler is set). Without a profiler (e.g. in the
+     * AI's simulations) the clock is not read at all.
+     *
+     * @param phase one of the TickProfiler.PHASE_ constants
+     * @param phaseStart the System.nanoTime() when the phase started
+     * @return the current System.nanoTime(), i.e. the start of the next phase (0 without a profiler)
+     */
+    private long recordPhase(int phase, long phaseStart) {
+        if (profiler == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        profiler.recordPhase(phase, now - phaseStart);
+        return now;
+    }
+
+    /** Takes an immutable snapshot of the state for painting, see GameSnapshot.
+     *
+     * @param tick the number of the tick that produced this state
+     * @param tickNanos the System.nanoTime() the tick was scheduled for
+     * @return the snapshot
+     */
+    public GameSnapshot snapshot(long tick, long tickNanos) {
+        return new GameSnapshot(tick, tickNanos, player1X, player1Y, player2X, player2Y,
+                player1State, player2State, player1Frame, player2Frame, player1FacingRight, player2FacingRight,
+                player1Health, player2Health, gameEnded, resultMessage);
     }
 
     // Getters for player properties and game state
-    public int getPlayer1X() { return player1X; }
-    public int getPlayer1Y() { return player1Y; }
+    public int getPlayer1X() { return FixedPhysics.toPixels(player1X); }
+    public int getPlayer1Y() { return FixedPhysics.toPixels(player1Y); }
     public int getPlayer1State() { return player1State; }
     public int getPlayer1Frame() { return player1Frame; }
     public boolean isPlayer1FacingRight() { return player1FacingRight; }
-    public int getPlayer2X() { return player2X; }
-    public int getPlayer2Y() { return player2Y; }
+    public int getPlayer2X() { return FixedPhysics.toPixels(player2X); }
+    public int getPlayer2Y() { return FixedPhysics.toPixels(player2Y); }
     public int getPlayer2State() { return player2State; }
     public int getPlayer2Frame() { return player2Frame; }
     public boolean isPlayer2FacingRight() { return player2FacingRight; }
@@ -0,0 +1,125 @@
+import java.awt.Toolkit;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.SwingUtilities;
+
+
+/** GameLoop runs the game logic and the rendering at independent rates, each on its own thread.
+ *
+ * The logic thread ticks at a fixed rate. When it falls behind (e.g. after a GC pause) it runs the missed ticks
+ * back to back to catch up, so the game speed does not depend on the frame rate. When it is hopelessly behind,
+ * the remaining ticks are skipped (and reported) rather than fast-forwarding the game.
+ * The render thread repaints the CombatGame as often as the display allows, and GamePainter interpolates between
+ * the last two ticks, so motion stays smooth on monitors faster than the tick rate.
+ */
+public class GameLoop {
+
+    private static final int MAX_CATCH_UP_TICKS = 5;
+
+    // fields
+    private final CombatGame game;
+    private final long tickPeriodNanos;
+    private final long framePeriodNanos;
+    private volatile boolean running;
+
+    /** Constructs a game loop.
+     *
+     * @param game the game to tick and repaint.
+     * @param tickRate the logic ticks per second.
+     * @param maxFps the maximum frames per second (e.g. the display refresh rate), or 0 for no limit.
+     */
+    public GameLoop(CombatGame game, int tickRate, int maxFps) {
+        this.game = game;
+        this.tickPeriodNanos = 1_000_000_000L / tickRate;
+        this.framePeriodNanos = maxFps > 0 ? 1_000_000_000L / maxFps : 0;
+    }
+
+    /** Starts the logic and render threads.
+     */
+    public void start() {
+        running = true;
+        Thread logic = new Thread(this::runLogic, "game-logic");
+        logic.setDaemon(true);
+        logic.start();
+        startRendering();
+    }
+
+    /** Starts only the render thread, for games whose state comes from elsewhere (e.g. a spectator).
+     */
+    public void startRendering() {
+        running = true;
+        Thread render = new Thread(this::runRender, "game-render");
+        render.setDaemon(true);
+        render.start();
+    }
+
+    /** Stops both threads after their current tick/frame.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * @return the time between two logic ticks in nanoseconds.
+     */
+    public long getTickPeriodNanos() {
+        return tickPeriodNanos;
+    }
+
+    /** The logic thread: ticks on a fixed schedule, catching up on missed ticks.
+     */
+    private void runLogic() {
+        TickProfiler profiler = game.getProfiler();
+        long nextTick = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            if (now < nextTick) {
+                LockSupport.parkNanos(nextTick - now);
+                continue;
+            }
+            int ticks = 0;
+            while (now >= nextTick && ticks < MAX_CATCH_UP_TICKS) {
+                profiler.tickStarted(System.nanoTime(), nextTick);
+                game.tick(nextTick);
+                nextTick += tickPeriodNanos;
+                ticks++;
+                now = System.nanoTime();
+            }
+            if (now >= nextTick) {
+                // Too far behind to catch up, skip the rest instead of speeding up the game
+                long skipped = (now - nextTick) / tickPeriodNanos + 1;
+                profiler.ticksSkipped(skipped);
+                nextTick += skipped * tickPeriodNanos;
+            }
+        }
+    }
+
+    /** The render thread: paints a frame, waits for it to reach the screen, and then for the next frame slot.
+     */
+    private void runRender() {
+        Runnable paint = () -> game.paintImmediately(0, 0, game.getWidth(), game.getHeight());
+        long nextFrame = System.nanoTime();
+        while (running) {
+            try {
+                SwingUtilities.invokeAndWait(paint);
+            } catch (InterruptedException e) {
+                return;
+            } catch (InvocationTargetException e) {
+                e.printStackTrace();
+            }
+            Toolkit.getDefaultToolkit().sync();
+
+            if (framePeriodNanos == 0) {
+                Thread.yield();
+                continue;
+            }
+            nextFrame += framePeriodNanos;
+            long now = System.nanoTime();
+            if (now < nextFrame) {
+                LockSupport.parkNanos(nextFrame - now);
+            } else {
+                nextFrame = now; // Running late, don't try to make up for lost frames
+            }
+        }
+    }
+}
@@ -1,29 +1,40 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 
 
 /** GamePainter is responsible for rendering the visual compontents of the game.
- * The classes CombatGame and GameLogic are integrated with this class to draw the various
- * game states and dynamically update the visuals based on the game actions and logics.  
+ * The class draws the snapshots GameLogic publishes after each tick (see SnapshotBuffer), and
+ * dynamically update the visuals based on the game actions and logics. Frames can be painted more often than the
+ * game ticks, so the fighters are drawn at positions interpolated between the last two ticks.
  * 
  * @author Adam Abdulmajid
  */
 
 public class GamePainter {
 
+    // Colors of the stage geometry
+    private static final Color PLATFORM_COLOR = new Color(110, 70, 40);
+    private static final Color WALL_COLOR = new Color(90, 90, 100);
+    private static final Color EDGE_COLOR = new Color(200, 160, 110);
+    private static final Color HAZARD_COLOR = new Color(255, 80, 0, 140);
+
     private CombatGame game;
-    private GameLogic gameLogic;
+    private SnapshotBuffer snapshots;
+    private BufferedImage particleLayer;
+    private int[] particlePixels;
+    private long lastPaintedTick = 0;
 
     /**
-     * Constructs a GamePainter, referencing to CombatGame and GameLogic inform necessary rendering.
+     * Constructs a GamePainter, referencing to CombatGame and the snapshots of GameLogic inform necessary rendering.
      * @param game the CombatGame instance.
-     * @param gameLogic the GameLogic instance.
+     * @param snapshots the buffer GameLogic publishes its state to.
      */
-    public GamePainter(CombatGame game, GameLogic gameLogic) {
+    public GamePainter(CombatGame game, SnapshotBuffer snapshots) {
         this.game = game;
-        this.gameLogic = gameLogic;
+        this.snapshots = snapshots;
     }
 
      /** Paints the game components based on current game state.
@@ -33,13 +44,39 @@ public class GamePainter {
         if (game.getCurrentGameState() == CombatGame.STATE_MENU) {
             drawMenu(g);
         } else if (game.getCurrentGameState() == CombatGame.STATE_PLAYING) {
-            drawBackground(g);
-            drawHealthBars(g);
-            drawSprites(g);
-            drawHUD(g);
+            GameSnapshot[] latest = snapshots.getLatest();
+            GameSnapshot current = latest[1];
+            double alpha = (System.nanoTime() - current.getTickNanos()) / (double) game.getTickPeriodNanos();
+            paintFrame(g, latest[0], current, Math.max(0, Math.min(1, alpha)));
+        }
+        if (game.isDebugOverlayVisible()) {
+            drawDebugOverlay(g);
         }
     }
 
+    /** Paints the match between two ticks, e.g. for exporting frames at fixed points in time (see FrameExporter).
+     * @param g the graphics object.
+     * @param previous the state of the previous tick.
+     * @param current the state of the current tick.
+     * @param alpha how far the frame is between the previous and the current tick (0 to 1).
+     */
+    public void paintFrame(Graphics g, GameSnapshot previous, GameSnapshot current, double alpha) {
+        drawBackground(g);
+        drawStage(g);
+        drawHealthBars(g, current);
+        drawSprites(g, previous, current, alpha);
+        drawParticles(g);
+        drawHUD(g, current);
+        lastPaintedTick = current.getTick();
+    }
+
+    /**
+     * @return the tick of the game state shown by the last painted frame.
+     */
+    public long getLastPaintedTick() {
+        return lastPaintedTick;
+    }
+
     /** Draws all the aspects of the menu
      * 
      * @param g the graphics object
@@ -52,7 +89,8 @@ public class GamePainter {
         g.drawString("Arena", game.getWidth() / 2 -60, 150);
         g.setFont(new Font("Arial", Font.PLAIN, 30));
         g.drawString("Press ENTER to Start", game.getWidth() / 2 - 130, 300);
-        g.drawString("Press ESC to Exit", game.getWidth() / 2 - 110, 350);
+        g.drawString("Press 1, 2 or 3 to fight the CPU", game.getWidth() / 2 - 210, 350);
+        g.drawString("Press ESC to Exit", game.getWidth() / 2 - 110, 400);
     }
 
     /** Draws the background image on the window
@@ -66,75 +104,180 @@ public class GamePainter {
         }
     }
 
+    /** Draws the walls, platforms and hazards of the stage. The floors are part of the background image.
+     * 
+     * @param g the graphics object
+     */
+    private void drawStage(Graphics g) {
+        Stage stage = game.getStage();
+        if (stage == null) {
+            return;
+        }
+        for (int box = 0; box < stage.getBoxCount(); box++) {
+            int kind = stage.getKind(box);
+            if (kind == Stage.KIND_FLOOR) {
+                continue;
+            }
+            int x = FixedPhysics.toPixels(stage.getLeft(box));
+            int y = FixedPhysics.toPixels(stage.getTop(box));
+            int width = FixedPhysics.toPixels(stage.getRight(box)) - x;
+            int height = FixedPhysics.toPixels(stage.getBottom(box)) - y;
+            if (kind == Stage.KIND_HAZARD) {
+                g.setColor(HAZARD_COLOR);
+                g.fillRect(x, y, width, height);
+            } else {
+                g.setColor(kind == Stage.KIND_WALL ? WALL_COLOR : PLATFORM_COLOR);
+                g.fillRect(x, y, width, height);
+                g.setColor(EDGE_COLOR);
+                g.fillRect(x, y, width, Math.min(3, height)); // The edge to stand on
+            }
+        }
+    }
+
     /** Draws the health bars for both players.
      * 
      * @param g
+     * @param state the state to draw
      */
-    private void drawHealthBars(Graphics g) {
+    private void drawHealthBars(Graphics g, GameSnapshot state) {
         g.setColor(Color.RED);
-        g.fillRect(50, 20, gameLogic.getPlayer1Health()*2, 25);
-        g.fillRect(550, 20, gameLogic.getPlayer2Health()*2,25);
+        g.fillRect(50, 20, state.getPlayer1Health()*2, 25);
+        g.fillRect(550, 20, state.getPlayer2Health()*2,25);
     }
 
     /**
      * Draws the player sprites based on their current position, state and the direction they are facing.
+     * The positions are interpolated between the previous and the current tick.
      * @param g
+     * @param previous the state of the previous tick
+     * @param current the state of the current tick
+     * @param alpha how far the frame is between the previous and the current tick (0 to 1)
      */
-    private void drawSprites(Graphics g) {
+    private void drawSprites(Graphics g, GameSnapshot previous, GameSnapshot current, double alpha) {
         Graphics2D g2d = (Graphics2D) g;
-        BufferedImage[][] playerSprites = game.getPlayerSprites();
-        double scaleFactor = 3;
-        int characterWidth = game.getCharacterWidth();
+        SpriteStore.Frame[][] playerSprites = game.getPlayerSprites();
         int characterHeight = game.getCharacterHeight();
-        int scaledWidth = (int) (characterWidth * scaleFactor);
-        int scaledHeight = (int) (characterHeight * scaleFactor);
 
         // Player 1
-        int player1X = gameLogic.getPlayer1X();
-        int player1Y = gameLogic.getPlayer1Y();
-        int player1State = gameLogic.getPlayer1State();
-        int player1Frame = gameLogic.getPlayer1Frame();
-       
-        boolean player1FacingRight = gameLogic.isPlayer1FacingRight();
+        int player1X = GameSnapshot.interpolate(previous.getPlayer1X(), current.getPlayer1X(), alpha);
+        int player1Y = GameSnapshot.interpolate(previous.getPlayer1Y(), current.getPlayer1Y(), alpha);
+        int player1State = current.getPlayer1State();
+        int player1Frame = current.getPlayer1Frame();
+        boolean player1FacingRight = current.isPlayer1FacingRight();
+        drawFrame(g2d, playerSprites[player1State][player1Frame], player1X, player1Y - characterHeight, player1FacingRight);
 
-        if (player1FacingRight) {
-          
-            g2d.drawImage(playerSprites[player1State][player1Frame], player1X, player1Y - characterHeight, scaledWidth, scaledHeight, null);
+        //  Player 2
+        int player2X = GameSnapshot.interpolate(previous.getPlayer2X(), current.getPlayer2X(), alpha);
+        int player2Y = GameSnapshot.interpolate(previous.getPlayer2Y(), current.getPlayer2Y(), alpha);
+        int player2State = current.getPlayer2State();
+        int player2Frame = current.getPlayer2Frame();
+        boolean player2FacingRight = current.isPlayer2FacingRight();
+        drawFrame(g2d, playerSprites[player2State][player2Frame], player2X, player2Y - characterHeight, player2FacingRight);
+    }
 
+    /** Draws a cropped sprite frame scaled by SPRITE_SCALE, placed as if the full frame was drawn at (x, y).
+     * A fighter facing left is drawn mirrored, so the crop is mirrored inside the full frame as well.
+     * @param g2d the graphics object.
+     * @param frame the frame.
+     * @param x the x-coordinate of the full frame.
+     * @param y the y-coordinate of the full frame.
+     * @param facingRight false to draw the frame mirrored.
+     */
+    private void drawFrame(Graphics2D g2d, SpriteStore.Frame frame, int x, int y, boolean facingRight) {
+        int scale = CombatGame.SPRITE_SCALE;
+        int width = frame.getWidth() * scale;
+        int top = y + frame.getOffsetY() * scale;
+        if (facingRight) {
+            g2d.drawImage(frame.getImage(), x + frame.getOffsetX() * scale, top, width, frame.getHeight() * scale, null);
         } else {
-           
-            g2d.drawImage(playerSprites[player1State][player1Frame], player1X + scaledWidth, player1Y - characterHeight, -scaledWidth, scaledHeight, null);
+            int right = x + (frame.getFrameWidth() - frame.getOffsetX()) * scale;
+            g2d.drawImage(frame.getImage(), right, top, -width, frame.getHeight() * scale, null);
         }
+    }
 
-        //  Player 2
-        int player2X = gameLogic.getPlayer2X();
-        int player2Y = gameLogic.getPlayer2Y();
-        int player2State = gameLogic.getPlayer2State();
-        int player2Frame = gameLogic.getPlayer2Frame();
-       
-        boolean player2FacingRight = gameLogic.isPlayer2FacingRight();
-
-        if (player2FacingRight) {
-            g2d.drawImage(playerSprites[player2State][player2Frame], player2X, player2Y - characterHeight, scaledWidth, scaledHeight, null);
-        } else {
-          
-            g2d.drawImage(playerSprites[player2State][player2Frame], player2X + scaledWidth, player2Y - characterHeight, -scaledWidth, scaledHeight, null);
+    /**
+     * Draws all particles in one go: they are written straight into the pixels of a transparent layer
+     * (kept between frames), which is then drawn over the game.
+     * @param g
+     */
+    private void drawParticles(Graphics g) {
+        ParticleSystem particles = game.getParticles();
+        int width = game.getWidth();
+        int height = game.getHeight();
+        if (particles == null || width <= 0 || height <= 0) {
+            return;
+        }
+        if (particleLayer == null || particleLayer.getWidth() != width || particleLayer.getHeight() != height) {
+            particleLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            particlePixels = ((DataBufferInt) particleLayer.getRaster().getDataBuffer()).getData();
+            particles.resetDirtyRows();
         }
+        particles.draw(particlePixels, width, height);
+        g.drawImage(particleLayer, 0, 0, null);
     }
 
     /**
      * Draws the HUD (HeadsUpDisplay), i.e. the player names, if the game has ended, and game results.
      * @param g
+     * @param state the state to draw
      */
-    private void drawHUD(Graphics g) {
+    private void drawHUD(Graphics g, GameSnapshot state) {
         
         g.setColor(Color.WHITE);
         g.setFont(new Font("Arial", Font.BOLD, 20));
         g.drawString("Player 1", 50, 15);
         g.drawString("Player 2", 550, 15);
-        if (gameLogic.isGameEnded()) {
+        if (state.isGameEnded()) {
             g.setFont(new Font("Arial", Font.BOLD, 40));
-            g.drawString(gameLogic.getResultMessage(), game.getWidth() / 2 - 100, game.getHeight() / 2);
+            g.drawString(state.getResultMessage(), game.getWidth() / 2 - 100, game.getHeight() / 2);
         }
     }
+
+    /**
+     * Draws the debug overlay (toggled with F3) with FPS, tick statistics and the timing of each tick phase and painting.
+     * @param g
+     */
+    private void drawDebugOverlay(Graphics g) {
+        TickProfiler profiler = game.getProfiler();
+        AiOpponent aiOpponent = game.getAiOpponent();
+        int lineHeight = 14;
+        int lines = TickProfiler.PHASE_NAMES.length + (aiOpponent != null ? 4 : 3);
+
+        g.setColor(new Color(0, 0, 0, 170));
+        g.fillRect(10, 55, 560, lines * lineHeight + 10);
+        g.setColor(Color.GREEN);
+        g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+        int y = 55 + lineHeight;
+        ParticleSystem particles = game.getParticles();
+        g.drawString(String.format("fps %.1f  ticks/s %.1f  gc %d ms/s  particles %d  spectators %d",
+                profiler.getFramesPerSecond(), profiler.getTicksPerSecond(), profiler.getGcMillisLastSecond(),
+                particles == null ? 0 : particles.getCount(), game.getSpectatorFeed().getSubscriberCount()), 15, y);
+        y += lineHeight;
+        g.drawString(String.format("ticks %d  late %d  missed %d  (times in us)", profiler.getTickCount(),
+                profiler.getLateTicks(), profiler.getMissedTicks()), 15, y);
+        for (int phase = 0; phase < TickProfiler.PHASE_NAMES.length; phase++) {
+            y += lineHeight;
+            g.drawString(profiler.summarize(phase), 15, y);
+        }
+        LatencyTracer tracer = game.getLatencyTracer();
+        if (tracer != null) {
+            y += lineHeight;
+            g.drawString(String.format("key-to-frame p50/p99 ms  move %.1f/%.1f  jump %.1f/%.1f  attack %.1f/%.1f",
+                    percentileMillis(tracer, LatencyTracer.ACTION_MOVE, 50), percentileMillis(tracer, LatencyTracer.ACTION_MOVE, 99),
+                    percentileMillis(tracer, LatencyTracer.ACTION_JUMP, 50), percentileMillis(tracer, LatencyTracer.ACTION_JUMP, 99),
+                    percentileMillis(tracer, LatencyTracer.ACTION_ATTACK, 50), percentileMillis(tracer, LatencyTracer.ACTION_ATTACK, 99)),
+                    15, y);
+        }
+        if (aiOpponent != null) {
+            y += lineHeight;
+            g.drawString(String.format("ai rollouts/s %.0f  decision p50=%.0f p99=%.0f  late %d",
+                    aiOpponent.getRolloutsPerSecond(), aiOpponent.getDecisionLatencyP50Micros(),
+                    aiOpponent.getDecisionLatencyP99Micros(), aiOpponent.getLateDecisions()), 15, y);
+        }
+    }
+
+    private static double percentileMillis(LatencyTracer tracer, int action, double percentile) {
+        return tracer.getHistogram(action).getValueAtPercentile(percentile) / 1e6;
+    }
 }
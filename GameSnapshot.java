@@ -0,0 +1,70 @@
+/** GameSnapshot is an immutable copy of everything GamePainter needs from GameLogic, taken at the end of a tick.
+ * The game logic runs on its own thread, so the painter never reads GameLogic directly: it draws the last two
+ * snapshots instead, interpolating the positions between them.
+ */
+public class GameSnapshot {
+
+    // fields (positions in FixedPhysics sub-pixel units)
+    private final long tick;
+    private final long tickNanos;
+    private final int player1X, player1Y, player2X, player2Y;
+    private final int player1State, player2State;
+    private final int player1Frame, player2Frame;
+    private final boolean player1FacingRight, player2FacingRight;
+    private final int player1Health, player2Health;
+    private final boolean gameEnded;
+    private final String resultMessage;
+
+    /** Constructs a snapshot. Only called by GameLogic.snapshot.
+     */
+    GameSnapshot(long tick, long tickNanos, int player1X, int player1Y, int player2X, int player2Y,
+            int player1State, int player2State, int player1Frame, int player2Frame,
+            boolean player1FacingRight, boolean player2FacingRight, int player1Health, int player2Health,
+            boolean gameEnded, String resultMessage) {
+        this.tick = tick;
+        this.tickNanos = tickNanos;
+        this.player1X = player1X;
+        this.player1Y = player1Y;
+        this.player2X = player2X;
+        this.player2Y = player2Y;
+        this.player1State = player1State;
+        this.player2State = player2State;
+        this.player1Frame = player1Frame;
+        this.player2Frame = player2Frame;
+        this.player1FacingRight = player1FacingRight;
+        this.player2FacingRight = player2FacingRight;
+        this.player1Health = player1Health;
+        this.player2Health = player2Health;
+        this.gameEnded = gameEnded;
+        this.resultMessage = resultMessage;
+    }
+
+    /** Interpolates a position between two snapshots.
+     *
+     * @param from the position (sub-pixel units) in the older snapshot
+     * @param to the position (sub-pixel units) in the newer snapshot
+     * @param alpha how far between the two, from 0 to 1
+     * @return the position in pixels
+     */
+    static int interpolate(int from, int to, double alpha) {
+        return FixedPhysics.toPixels((int) Math.round(from + (to - from) * alpha));
+    }
+
+    // Getters for the captured state
+    public long getTick() { return tick; }
+    public long getTickNanos() { return tickNanos; }
+    public int getPlayer1X() { return player1X; }
+    public int getPlayer1Y() { return player1Y; }
+    public int getPlayer1State() { return player1State; }
+    public int getPlayer1Frame() { return player1Frame; }
+    public boolean isPlayer1FacingRight() { return player1FacingRight; }
+    public int getPlayer2X() { return player2X; }
+    public int getPlayer2Y() { return player2Y; }
+    public int getPlayer2State() { return player2State; }
+    public int getPlayer2Frame() { return player2Frame; }
+    public boolean isPlayer2FacingRight() { return player2FacingRight; }
+    public int getPlayer1Health() { return player1Health; }
+    public int getPlayer2Health() { return player2Health; }
+    public boolean isGameEnded() { return gameEnded; }
+    public String getResultMessage() { return resultMessage; }
+}
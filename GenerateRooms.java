@@ -10,14 +10,18 @@ import java.util.Scanner;
  * It reads a data from a textfile (Rooms.txt), constructs room objects with descriptions and directional paths
  * and enables/manages the consoled based navigation between them.
  * When you choose to challange the opponent, the swing game initiates.
- * The class integrated with the FileTextAnalyzer, which inherently integrated with the FileWordSplitter, to track all time wins for each player.
+ * The class integrated with the WinLog, which keeps the win counts of each player in the footers of its compressed segments, to track all time wins for each player.
+ * Before the fight both players enter their names, under which their matches are rated on the Ladder (Ladder.dat).
  * 
  * @author Adam Abdulmajid
 */
 
 public class GenerateRooms {
 
-    static FileTextAnalyzer fileAnalyzer = new FileTextAnalyzer("Wins.txt");
+    static WinLog winLog = new WinLog("Wins.txt");
+    static Ladder ladder = Ladder.load("Ladder.dat");
+    static String player1Name = "Player 1";
+    static String player2Name = "Player 2";
 
     /** Reads room data from file, and generates a map of room objects with descriptions and available directions.
      * 
@@ -64,7 +68,8 @@ public class GenerateRooms {
 
         return rooms;
     }
-    /** Starts the console-based game. Provides options to display win counts for each player.
+    /** Starts the console-based game. Provides options to display win counts for each player ('log'),
+     * the top of the ladder (also 'log'), the longest winning streaks ('streaks') and the rating of a named player ('rank name').
      * 
      * @param rooms a map of room objects representing the text based game world.
      * @return true if the player chooses to fight the oppoent.
@@ -79,13 +84,29 @@ public class GenerateRooms {
             Room room = rooms.get(currentRoom);
             System.out.println(room.getDescription());
 
-            System.out.println("Type a command (direction or 'log'):");
-            String input = scanner.nextLine().trim().toLowerCase();
+            System.out.println("Type a command (direction, 'log', 'streaks' or 'rank <name>'):");
+            String line = scanner.nextLine().trim();
+            String input = line.toLowerCase();
 
-            // Check if the input is "log" to display win counts
+            // Check if the input is "log" to display win counts and the ladder
             if (input.equals("log")) {
-                System.out.println("Player 1 Wins: " + fileAnalyzer.occurencesOf("1"));
-                System.out.println("Player 2 Wins: " + fileAnalyzer.occurencesOf("2"));
+                System.out.println("Player 1 Wins: " + winLog.getWins("1"));
+                System.out.println("Player 2 Wins: " + winLog.getWins("2"));
+                System.out.println("Ladder (" + ladder.getPlayerCount() + " players, " + ladder.getMatchCount() + " matches):");
+                System.out.print(ladder.leaderboard(10));
+                continue;
+            }
+            // "streaks" shows the longest winning streaks, which needs the whole (compressed) log
+            if (input.equals("streaks")) {
+                Map<String, Integer> streaks = winLog.longestStreaks();
+                System.out.println("Longest streak Player 1: " + streaks.getOrDefault("1", 0));
+                System.out.println("Longest streak Player 2: " + streaks.getOrDefault("2", 0));
+                continue;
+            }
+            // "rank <name>" shows a player's rank and rating (names are case sensitive)
+            if (input.startsWith("rank ")) {
+                System.out.println(ladder.describe(line.substring(5).trim()));
+                continue;
             }
 
             // Handle direction commands
@@ -97,6 +118,9 @@ public class GenerateRooms {
                     String response = scanner.nextLine().trim().toLowerCase();
 
                     if (response.equals("yes")) {
+                        player1Name = readName(scanner, "Player 1 (W/A/S/D), enter your name:", player1Name);
+                        player2Name = readName(scanner, "Player 2 (arrow keys), enter your name:", player2Name);
+                        System.out.println(ladder.describe(player1Name) + " vs " + ladder.describe(player2Name));
                         System.out.println("Prepare yourself! The game begins now.");
                         System.out.println("W for jumping \nS for attacking \nA & D for running");
                         System.out.println("Loading....");
@@ -112,6 +136,19 @@ public class GenerateRooms {
             }
         }
     }
+
+    /** Asks for a player name.
+     * 
+     * @param scanner the console input.
+     * @param prompt the question to print.
+     * @param defaultName the name to use if nothing is entered.
+     * @return the entered name.
+     */
+    private static String readName(Scanner scanner, String prompt, String defaultName) {
+        System.out.println(prompt);
+        String name = scanner.nextLine().trim();
+        return name.isEmpty() ? defaultName : name;
+    }
 }
 
 
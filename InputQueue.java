@@ -0,0 +1,180 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/** InputQueue is a lock-free single-producer/single-consumer ring buffer of timestamped key events.
+ * The key listener (producer) offers events as they arrive, and the game loop (consumer) drains them at the start
+ * of each tick, so the game state is never changed in the middle of a tick and inputs are processed in a
+ * deterministic order.
+ *
+ * A press and a release of the same key in one drain would cancel each other out before the tick sees the press
+ * (e.g. a quick tap on the attack key), so such a release is deferred to the next tick, together with the later
+ * events of that key (to keep their order). The events of other keys are still applied in this tick.
+ */
+public class InputQueue {
+
+    private static final int MAX_KEYS_PER_DRAIN = 32;
+    private static final int MAX_DEFERRED = 64;
+
+    // fields
+    private final int mask;
+    private final int[] keyCodes;
+    private final boolean[] pressed;
+    private final long[] timestamps;
+    private final AtomicLong head = new AtomicLong(); // Next event to read, only written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // Next free slot, only written by the producer
+    private final int[] pressedThisDrain = new int[MAX_KEYS_PER_DRAIN];
+    private int pressedCount;
+
+    // Events deferred to the next drain, only used by the consumer. The arrays of this drain and of the next one are
+    // swapped after each drain.
+    private int[] deferredKeyCodes = new int[MAX_DEFERRED], nextKeyCodes = new int[MAX_DEFERRED];
+    private boolean[] deferredPressed = new boolean[MAX_DEFERRED], nextPressed = new boolean[MAX_DEFERRED];
+    private long[] deferredTimestamps = new long[MAX_DEFERRED], nextTimestamps = new long[MAX_DEFERRED];
+    private int deferredCount, nextCount;
+    private volatile long dropped;
+
+    /** Constructs an empty queue.
+     *
+     * @param capacity the maximum number of queued events, rounded up to a power of two.
+     */
+    public InputQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        keyCodes = new int[size];
+        pressed = new boolean[size];
+        timestamps = new long[size];
+    }
+
+    /** Adds a key event. Must only be called from the producer thread.
+     *
+     * @param keyCode the key code of the event.
+     * @param isPressed true if the key was pressed, false if released.
+     * @param timestamp the System.nanoTime() when the event arrived.
+     * @return false if the queue was full and the event was dropped.
+     */
+    public boolean offer(int keyCode, boolean isPressed, long timestamp) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            dropped++;
+            return false;
+        }
+        int slot = (int) t & mask;
+        keyCodes[slot] = keyCode;
+        pressed[slot] = isPressed;
+        timestamps[slot] = timestamp;
+        tail.lazySet(t + 1); // Publishes the slot to the consumer
+        return true;
+    }
+
+    /** Applies the queued events to the game logic, in the order they arrived. Must only be called from the
+     * consumer thread.
+     *
+     * @param gameLogic the game logic receiving the events.
+     * @return the number of events applied.
+     */
+    public int drainTo(GameLogic gameLogic) {
+        return drainTo(gameLogic, null, 0);
+    }
+
+    /** Applies the queued events to the game logic, and reports each one (with its arrival time) to a latency
+     * tracer. Must only be called from the consumer thread.
+     *
+     * @param gameLogic the game logic receiving the events.
+     * @param tracer the tracer to report the applied events to (or null).
+     * @param tick the number of the tick the events are applied in.
+     * @return the number of events applied.
+     */
+    public int drainTo(GameLogic gameLogic, LatencyTracer tracer, long tick) {
+        pressedCount = 0;
+        nextCount = 0;
+        int applied = 0;
+
+        // The events deferred by the last drain arrived first
+        for (int i = 0; i < deferredCount; i++) {
+            if (apply(gameLogic, tracer, tick, deferredKeyCodes[i], deferredPressed[i], deferredTimestamps[i])) {
+                applied++;
+            } else {
+                defer(deferredKeyCodes[i], deferredPressed[i], deferredTimestamps[i]); // Always fits
+            }
+        }
+
+        long h = head.get();
+        long t = tail.get();
+        while (h < t) {
+            int slot = (int) h & mask;
+            if (apply(gameLogic, tracer, tick, keyCodes[slot], pressed[slot], timestamps[slot])) {
+                applied++;
+            } else if (nextCount < MAX_DEFERRED) {
+                defer(keyCodes[slot], pressed[slot], timestamps[slot]);
+            } else {
+                break; // Too much deferred: leave the rest in the queue, in order
+            }
+            h++;
+        }
+        head.lazySet(h); // Frees the slots for the producer
+
+        int[] keyCodesSwap = deferredKeyCodes;
+        deferredKeyCodes = nextKeyCodes;
+        nextKeyCodes = keyCodesSwap;
+        boolean[] pressedSwap = deferredPressed;
+        deferredPressed = nextPressed;
+        nextPressed = pressedSwap;
+        long[] timestampsSwap = deferredTimestamps;
+        deferredTimestamps = nextTimestamps;
+        nextTimestamps = timestampsSwap;
+        deferredCount = nextCount;
+        return applied;
+    }
+
+    /** Applies one event, unless it has to wait for the next tick: it releases a key pressed in this drain, or an
+     * earlier event of its key is already waiting.
+     *
+     * @return false if the event has to be deferred.
+     */
+    private boolean apply(GameLogic gameLogic, LatencyTracer tracer, long tick, int keyCode, boolean isPressed,
+            long timestamp) {
+        if ((!isPressed && wasPressed(keyCode)) || isDeferred(keyCode)) {
+            return false; // Let the tick see the press first, the release is applied next tick
+        }
+        if (isPressed && pressedCount < MAX_KEYS_PER_DRAIN) {
+            pressedThisDrain[pressedCount++] = keyCode;
+        }
+        gameLogic.handlePlayerInput(keyCode, isPressed);
+        if (tracer != null) {
+            tracer.eventApplied(keyCode, timestamp, tick);
+        }
+        return true;
+    }
+
+    private void defer(int keyCode, boolean isPressed, long timestamp) {
+        nextKeyCodes[nextCount] = keyCode;
+        nextPressed[nextCount] = isPressed;
+        nextTimestamps[nextCount] = timestamp;
+        nextCount++;
+    }
+
+    private boolean wasPressed(int keyCode) {
+        for (int i = 0; i < pressedCount; i++) {
+            if (pressedThisDrain[i] == keyCode) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isDeferred(int keyCode) {
+        for (int i = 0; i < nextCount; i++) {
+            if (nextKeyCodes[i] == keyCode) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of events dropped because the queue was full.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/** InputRecording holds the key events applied in each tick of a match, from the keyboard and from the AI alike.
+ * The game logic is deterministic, so replaying the events into a new GameLogic gives the same match, tick for tick
+ * (e.g. to export it as a video with FrameExporter).
+ *
+ * The file is a header (magic, tick period, number of ticks and events) followed by one record per event:
+ * the tick, the key code and whether the key was pressed.
+ */
+public class InputRecording {
+
+    private static final int MAGIC = 0x41524543; // "AREC"
+
+    // fields
+    private final long tickPeriodNanos;
+    private int tickCount;
+    private int eventCount;
+    private int[] ticks = new int[64];
+    private int[] keyCodes = new int[64];
+    private boolean[] pressed = new boolean[64];
+    private int playbackTick, playbackEvent;
+
+    /** Constructs an empty recording.
+     *
+     * @param tickPeriodNanos the time between two ticks of the recorded game.
+     */
+    public InputRecording(long tickPeriodNanos) {
+        this.tickPeriodNanos = tickPeriodNanos;
+    }
+
+    /** Records a key event applied in the current tick. Called by GameLogic.handlePlayerInput.
+     *
+     * @param keyCode the key code.
+     * @param isPressed true if the key was pressed, false if released.
+     */
+    public void record(int keyCode, boolean isPressed) {
+        if (eventCount == ticks.length) {
+            ticks = Arrays.copyOf(ticks, eventCount * 2);
+            keyCodes = Arrays.copyOf(keyCodes, eventCount * 2);
+            pressed = Arrays.copyOf(pressed, eventCount * 2);
+        }
+        ticks[eventCount] = tickCount;
+        keyCodes[eventCount] = keyCode;
+        pressed[eventCount] = isPressed;
+        eventCount++;
+    }
+
+    /** Ends the current tick, the following events belong to the next one. Called at the end of onGameTick.
+     */
+    public void endTick() {
+        tickCount++;
+    }
+
+    /** Applies the events of the next tick to a game logic, for replaying the match. Call once per tick, before
+     * the tick's onGameTick.
+     *
+     * @param gameLogic the game logic replaying the match.
+     */
+    public void applyTick(GameLogic gameLogic) {
+        while (playbackEvent < eventCount && ticks[playbackEvent] == playbackTick) {
+            gameLogic.handlePlayerInput(keyCodes[playbackEvent], pressed[playbackEvent]);
+            playbackEvent++;
+        }
+        playbackTick++;
+    }
+
+    /**
+     * @return the time between two ticks of the recorded game in nanoseconds.
+     */
+    public long getTickPeriodNanos() {
+        return tickPeriodNanos;
+    }
+
+    /**
+     * @return the number of recorded ticks.
+     */
+    public int getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * @return the number of recorded key events.
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /** Saves the recording.
+     *
+     * @param fileName the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(String fileName) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(tickPeriodNanos);
+            out.writeInt(tickCount);
+            out.writeInt(eventCount);
+            for (int i = 0; i < eventCount; i++) {
+                out.writeInt(ticks[i]);
+                out.writeShort(keyCodes[i]);
+                out.writeBoolean(pressed[i]);
+            }
+        }
+    }
+
+    /** Loads a recording for replaying.
+     *
+     * @param fileName the file to read.
+     * @return the recording.
+     * @throws IOException if the file cannot be read or is not a recording.
+     */
+    public static InputRecording read(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(fileName + " is not an input recording");
+            }
+            InputRecording recording = new InputRecording(in.readLong());
+            int tickCount = in.readInt();
+            int eventCount = in.readInt();
+            for (int i = 0; i < eventCount; i++) {
+                recording.tickCount = in.readInt();
+                recording.record(in.readUnsignedShort(), in.readBoolean());
+            }
+            recording.tickCount = tickCount;
+            return recording;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/** Ladder keeps Elo ratings for named players. Every match is appended to a journal file, and the whole ladder is
+ * rebuilt from that journal on start-up.
+ *
+ * The journal is binary: a record is either a new player ('P' and the name, the player gets the next id) or a
+ * match ('M', the winner's id and the loser's id). Rebuilding replays the matches into plain arrays first and
+ * builds the rank index once at the end, so millions of matches load in about a second.
+ *
+ * Leaderboard and rank queries are answered by an index over the ratings rounded to whole points: a Fenwick tree of
+ * the number of players per rating (so a rank is a prefix sum, O(log MAX_RATING)) and a linked list of the players
+ * of each rating (so the top of the ladder is found by walking down from the highest rating). Updating a player
+ * moves them between two lists and touches two paths of the tree, without allocating.
+ *
+ * Ratings start at 1500. The K-factor is 40 for a player's first 30 matches and 20 after that.
+ * All methods are synchronized: matches are recorded on the game loop thread, queries may come from anywhere.
+ */
+public class Ladder {
+
+    static final double INITIAL_RATING = 1500;
+    static final int MAX_RATING = 4096; // Ratings are clamped to [0, MAX_RATING) in the index
+    private static final int PROVISIONAL_MATCHES = 30;
+    private static final double PROVISIONAL_K = 40;
+    private static final double K = 20;
+
+    private static final byte RECORD_PLAYER = 'P';
+    private static final byte RECORD_MATCH = 'M';
+    private static final int NONE = -1;
+
+    // Players, indexed by id
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private final ArrayList<String> names = new ArrayList<>();
+    private double[] ratings = new double[1024];
+    private int[] wins = new int[1024];
+    private int[] losses = new int[1024];
+    private long matches;
+
+    // Rank index: a Fenwick tree of player counts per rating, and a doubly linked list of the players of each rating
+    private final int[] tree = new int[MAX_RATING + 1];
+    private final int[] bucketHeads = new int[MAX_RATING];
+    private int[] bucketOf = new int[1024];
+    private int[] next = new int[1024];
+    private int[] previous = new int[1024];
+    private boolean indexed = true;
+
+    // Journal
+    private final String journalFile;
+    private DataOutputStream journal;
+
+    /** Constructs an empty ladder.
+     *
+     * @param journalFile the file matches are appended to, or null to keep the ladder in memory only.
+     */
+    public Ladder(String journalFile) {
+        this.journalFile = journalFile;
+        Arrays.fill(bucketHeads, NONE);
+    }
+
+    /** Loads a ladder by replaying its journal. A missing journal gives an empty ladder. A truncated last record
+     * (e.g. after a crash while writing it) or a corrupt one is cut off the journal, so new matches are appended
+     * right after the last complete record; the bytes cut off are kept in a ".bad" file next to the journal.
+     *
+     * @param journalFile the journal to replay, and to append new matches to.
+     * @return the ladder.
+     */
+    public static Ladder load(String journalFile) {
+        Ladder ladder = new Ladder(journalFile);
+        File file = new File(journalFile);
+        if (!file.exists()) {
+            return ladder;
+        }
+        ladder.indexed = false;
+        long complete = 0; // The end of the last complete record
+        boolean damaged = false;
+        try (CountingInputStream counter = new CountingInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16));
+                DataInputStream in = new DataInputStream(counter)) {
+            int type;
+            while ((type = in.read()) != -1) {
+                if (type == RECORD_MATCH) {
+                    int winner = in.readInt();
+                    int loser = in.readInt();
+                    if (winner < 0 || loser < 0 || winner >= ladder.names.size() || loser >= ladder.names.size()) {
+                        System.out.println(journalFile + " is corrupt, ignoring everything after match " + ladder.matches);
+                        damaged = true;
+                        break;
+                    }
+                    ladder.applyMatch(winner, loser);
+                } else if (type == RECORD_PLAYER) {
+                    ladder.addPlayer(in.readUTF());
+                } else {
+                    System.out.println(journalFile + " is corrupt, ignoring everything after match " + ladder.matches);
+                    damaged = true;
+                    break;
+                }
+                complete = counter.count;
+            }
+        } catch (EOFException e) {
+            System.out.println(journalFile + " ends with an incomplete record, ignoring it");
+            damaged = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (damaged) {
+            cutOff(file, complete);
+        }
+        ladder.buildIndex();
+        return ladder;
+    }
+
+    /** Moves the end of a damaged journal, from the end of its last complete record on, into a ".bad" file.
+     */
+    private static void cutOff(File file, long complete) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                FileChannel bad = FileChannel.open(Paths.get(file.getPath() + ".bad"), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long length = channel.size();
+            for (long position = complete; position < length; ) {
+                position += channel.transferTo(position, length - position, bad);
+            }
+            channel.truncate(complete);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Records the result of a match: updates both ratings and appends the match (and any new player) to the journal.
+     * A match of a player against themselves (both players entered the same name) is not rated.
+     *
+     * @param winner the name of the winner.
+     * @param loser the name of the loser.
+     */
+    public synchronized void recordMatch(String winner, String loser) {
+        if (winner.equals(loser)) {
+            return;
+        }
+        int winnerId = idOf(winner);
+        int loserId = idOf(loser);
+        applyMatch(winnerId, loserId);
+        if (journalFile == null) {
+            return;
+        }
+        try {
+            DataOutputStream out = journal();
+            out.writeByte(RECORD_MATCH);
+            out.writeInt(winnerId);
+            out.writeInt(loserId);
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Closes the journal. Further matches reopen it.
+     */
+    public synchronized void close() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            journal = null;
+        }
+    }
+
+    /**
+     * @param name the name of a player.
+     * @return the rating of the player, or the initial rating if they have not played yet.
+     */
+    public synchronized double getRating(String name) {
+        Integer id = ids.get(name);
+        return id == null ? INITIAL_RATING : ratings[id];
+    }
+
+    /** Gets the rank of a player: one more than the number of players with a higher (rounded) rating, so players
+     * with the same rating share a rank.
+     *
+     * @param name the name of a player.
+     * @return the rank (1 is the best), or 0 if the player has not played yet.
+     */
+    public synchronized int getRank(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            return 0;
+        }
+        return names.size() - prefixCount(bucketOf[id]) + 1;
+    }
+
+    /** Gets the best players, highest rating first.
+     *
+     * @param count the maximum number of players.
+     * @return the names of the players.
+     */
+    public synchronized String[] getTopPlayers(int count) {
+        int[] top = new int[Math.min(count, names.size())];
+        int found = 0;
+        for (int bucket = MAX_RATING - 1; bucket >= 0 && found < top.length; bucket--) {
+            int first = found;
+            for (int id = bucketHeads[bucket]; id != NONE && found < top.length; id = next[id]) {
+                top[found++] = id;
+            }
+            // Players with the same rounded rating: order them by their exact rating (insertion sort, tiny lists)
+            for (int i = first + 1; i < found; i++) {
+                int id = top[i];
+                int j = i - 1;
+                while (j >= first && ratings[top[j]] < ratings[id]) {
+                    top[j + 1] = top[j];
+                    j--;
+                }
+                top[j + 1] = id;
+            }
+        }
+        String[] result = new String[found];
+        for (int i = 0; i < found; i++) {
+            result[i] = names.get(top[i]);
+        }
+        return result;
+    }
+
+    /** Describes a player on one line: rank, rating and record.
+     *
+     * @param name the name of a player.
+     * @return the description.
+     */
+    public synchronized String describe(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            return name + " has not played yet";
+        }
+        return String.format("#%d %s %.0f (%d-%d)", getRank(name), name, ratings[id], wins[id], losses[id]);
+    }
+
+    /** Formats the top of the ladder, one player per line.
+     *
+     * @param count the number of players to show.
+     * @return the leaderboard.
+     */
+    public synchronized String leaderboard(int count) {
+        StringBuilder builder = new StringBuilder();
+        for (String name : getTopPlayers(count)) {
+            builder.append(describe(name)).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the number of players.
+     */
+    public synchronized int getPlayerCount() {
+        return names.size();
+    }
+
+    /**
+     * @return the number of matches played.
+     */
+    public synchronized long getMatchCount() {
+        return matches;
+    }
+
+    /** Gets the id of a player, adding (and journaling) the player if they are new.
+     */
+    private int idOf(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (journalFile != null) {
+            try {
+                DataOutputStream out = journal();
+                out.writeByte(RECORD_PLAYER);
+                out.writeUTF(name);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return addPlayer(name);
+    }
+
+    private DataOutputStream journal() throws IOException {
+        if (journal == null) {
+            journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+        }
+        return journal;
+    }
+
+    private int addPlayer(String name) {
+        int id = names.size();
+        if (id == ratings.length) {
+            int capacity = id * 2;
+            ratings = Arrays.copyOf(ratings, capacity);
+            wins = Arrays.copyOf(wins, capacity);
+            losses = Arrays.copyOf(losses, capacity);
+            bucketOf = Arrays.copyOf(bucketOf, capacity);
+            next = Arrays.copyOf(next, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+        }
+        names.add(name);
+        ids.put(name, id);
+        ratings[id] = INITIAL_RATING;
+        if (indexed) {
+            insert(id);
+        }
+        return id;
+    }
+
+    /** Applies the Elo update of a match to both players (and the index, unless the ladder is being loaded).
+     */
+    private void applyMatch(int winner, int loser) {
+        double expected = 1 / (1 + Math.pow(10, (ratings[loser] - ratings[winner]) / 400));
+        double winnerK = wins[winner] + losses[winner] < PROVISIONAL_MATCHES ? PROVISIONAL_K : K;
+        double loserK = wins[loser] + losses[loser] < PROVISIONAL_MATCHES ? PROVISIONAL_K : K;
+        ratings[winner] += winnerK * (1 - expected);
+        ratings[loser] -= loserK * (1 - expected);
+        wins[winner]++;
+        losses[loser]++;
+        matches++;
+        if (indexed) {
+            move(winner);
+            move(loser);
+        }
+    }
+
+    /** Builds the index for all players at once, after loading.
+     */
+    private void buildIndex() {
+        for (int id = 0; id < names.size(); id++) {
+            insert(id);
+        }
+        indexed = true;
+    }
+
+    private static int bucket(double rating) {
+        return Math.max(0, Math.min(MAX_RATING - 1, (int) Math.round(rating)));
+    }
+
+    /** Moves a player to the list of their new rating, if it changed.
+     */
+    private void move(int id) {
+        if (bucket(ratings[id]) != bucketOf[id]) {
+            remove(id);
+            insert(id);
+        }
+    }
+
+    private void insert(int id) {
+        int bucket = bucket(ratings[id]);
+        bucketOf[id] = bucket;
+        previous[id] = NONE;
+        next[id] = bucketHeads[bucket];
+        if (next[id] != NONE) {
+            previous[next[id]] = id;
+        }
+        bucketHeads[bucket] = id;
+        for (int i = bucket + 1; i <= MAX_RATING; i += i & -i) {
+            tree[i]++;
+        }
+    }
+
+    private void remove(int id) {
+        int bucket = bucketOf[id];
+        if (previous[id] != NONE) {
+            next[previous[id]] = next[id];
+        } else {
+            bucketHeads[bucket] = next[id];
+        }
+        if (next[id] != NONE) {
+            previous[next[id]] = previous[id];
+        }
+        for (int i = bucket + 1; i <= MAX_RATING; i += i & -i) {
+            tree[i]--;
+        }
+    }
+
+    /** Counts the players whose rounded rating is at most the given bucket.
+     */
+    private int prefixCount(int bucket) {
+        int count = 0;
+        for (int i = bucket + 1; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    /** Counts the bytes read through it, so load knows where each record ends.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
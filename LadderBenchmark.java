@@ -0,0 +1,80 @@
+import java.io.File;
+import java.util.Random;
+
+
+/** LadderBenchmark writes a journal of random matches between many players (each with a hidden skill, so the
+ * ratings spread out like a real ladder), then measures how long the Ladder takes to rebuild from it and how fast
+ * it answers rank and leaderboard queries and records new matches.
+ *
+ * Run with: java LadderBenchmark [matches] [players]
+ */
+public class LadderBenchmark {
+
+    private static final int QUERIES = 1_000_000;
+
+    /** Runs the benchmark.
+     * @param args optionally the number of matches and the number of players.
+     */
+    public static void main(String[] args) {
+        int matches = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        File file = new File(System.getProperty("java.io.tmpdir"), "LadderBenchmark.dat");
+        file.delete();
+
+        String[] names = new String[players];
+        double[] skills = new double[players];
+        Random random = new Random(35);
+        for (int i = 0; i < players; i++) {
+            names[i] = "player" + i;
+            skills[i] = random.nextGaussian() * 200;
+        }
+
+        long start = System.nanoTime();
+        Ladder writer = new Ladder(file.getPath());
+        for (int i = 0; i < matches; i++) {
+            int a = random.nextInt(players);
+            int b = random.nextInt(players);
+            if (a == b) {
+                continue;
+            }
+            double aWins = 1 / (1 + Math.pow(10, (skills[b] - skills[a]) / 400));
+            if (random.nextDouble() < aWins) {
+                writer.recordMatch(names[a], names[b]);
+            } else {
+                writer.recordMatch(names[b], names[a]);
+            }
+        }
+        writer.close();
+        long recordNanos = System.nanoTime() - start;
+        System.out.printf("recorded %d matches between %d players: %.0f ns/match (journal %d MB)%n",
+                writer.getMatchCount(), writer.getPlayerCount(), (double) recordNanos / writer.getMatchCount(),
+                file.length() >> 20);
+
+        for (int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            Ladder ladder = Ladder.load(file.getPath());
+            long loadNanos = System.nanoTime() - start;
+            System.out.printf("rebuild: %.0f ms (%.1f M matches/s)%n", loadNanos / 1e6,
+                    ladder.getMatchCount() * 1e3 / loadNanos);
+
+            start = System.nanoTime();
+            long checksum = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                checksum += ladder.getRank(names[random.nextInt(players)]);
+            }
+            long rankNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < 10_000; i++) {
+                checksum += ladder.getTopPlayers(100).length;
+            }
+            long topNanos = System.nanoTime() - start;
+            System.out.printf("  rank: %.0f ns/query, top 100: %.1f us/query (checksum %d)%n",
+                    (double) rankNanos / QUERIES, topNanos / 1e3 / 10_000, checksum);
+            if (round == 2) {
+                System.out.print(ladder.leaderboard(5));
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.Arrays;
+
+
+/** LatencyHistogram records durations (in nanoseconds) into log-linear buckets, in the same spirit as an HDR histogram.
+ * Every power of two is split into 32 linear sub-buckets, which keeps the relative error of a reported percentile
+ * below ~3% while the whole histogram stays a single fixed array (no allocation when recording).
+ *
+ * The histogram is meant to have a single writer thread. Readers on other threads (JMX, the debug overlay)
+ * may see slightly stale counts, which is fine for monitoring.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    private static final int MAX_SHIFT = 40;
+
+    // fields
+    private final long[] counts = new long[SUB_BUCKET_COUNT + MAX_SHIFT * SUB_BUCKET_HALF];
+    private long totalCount;
+    private long totalNanos;
+    private long maxNanos;
+
+    /** Records one measured duration.
+     *
+     * @param nanos the duration in nanoseconds (negative values are counted as 0).
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[indexOf(nanos)]++;
+        totalCount++;
+        totalNanos += nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+    }
+
+    /** Finds the value at the given percentile.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the (upper bound of the) bucket holding that percentile, in nanoseconds. 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount;
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * Math.min(percentile, 100.0) / 100.0);
+        if (target < 1) {
+            target = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    /**
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the largest recorded value in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @return the mean of the recorded values in nanoseconds.
+     */
+    public double getMeanNanos() {
+        long total = totalCount;
+        return total == 0 ? 0 : (double) totalNanos / total;
+    }
+
+    /** Clears all recorded values. Should be called from the writer thread (or while nothing is recording).
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    /** Maps a value to its bucket. Values below SUB_BUCKET_COUNT get an exact bucket each,
+     * after that every power of two gets SUB_BUCKET_HALF buckets.
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = Math.min(msb - (SUB_BUCKET_BITS - 1), MAX_SHIFT);
+        long top = Math.min(value >>> shift, SUB_BUCKET_COUNT - 1);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (int) (top - SUB_BUCKET_HALF);
+    }
+
+    /** The largest value that maps to the given bucket (the inverse of indexOf).
+     */
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+        long top = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((top + 1) << shift) - 1;
+    }
+}
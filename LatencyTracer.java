@@ -0,0 +1,136 @@
+import java.awt.event.KeyEvent;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/** LatencyTracer measures the time from a key event arriving in CombatGame's key listener to the first painted
+ * frame that shows the state of the tick which applied it, per kind of action (move, jump, attack).
+ *
+ * The game loop reports every applied event together with its arrival time and tick number (producer), and the
+ * painter reports the tick of every frame it has painted (consumer). Traces waiting for their frame are kept in a
+ * lock-free single-producer/single-consumer ring buffer, so tracing adds no locks to either thread.
+ */
+public class LatencyTracer {
+
+    // Kinds of actions
+    static final int ACTION_MOVE = 0;
+    static final int ACTION_JUMP = 1;
+    static final int ACTION_ATTACK = 2;
+    static final String[] ACTION_NAMES = {"move", "jump", "attack"};
+
+    // fields
+    private final int mask;
+    private final long[] arrivals;
+    private final long[] ticks;
+    private final int[] actions;
+    private final AtomicLong head = new AtomicLong(); // Next trace waiting for a frame, written by the painter
+    private final AtomicLong tail = new AtomicLong(); // Next free slot, written by the game loop
+    private final LatencyHistogram[] histograms = new LatencyHistogram[ACTION_NAMES.length];
+    private volatile long dropped;
+
+    /** Constructs a tracer.
+     *
+     * @param capacity the maximum number of events waiting for their frame, rounded up to a power of two.
+     */
+    public LatencyTracer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        arrivals = new long[size];
+        ticks = new long[size];
+        actions = new int[size];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /** Classifies a key.
+     *
+     * @param keyCode the key code.
+     * @return one of the ACTION_ constants, or -1 if the key is not a game action.
+     */
+    static int actionOf(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.VK_A:
+            case KeyEvent.VK_D:
+            case KeyEvent.VK_LEFT:
+            case KeyEvent.VK_RIGHT:
+                return ACTION_MOVE;
+            case KeyEvent.VK_W:
+            case KeyEvent.VK_UP:
+                return ACTION_JUMP;
+            case KeyEvent.VK_S:
+            case KeyEvent.VK_DOWN:
+                return ACTION_ATTACK;
+            default:
+                return -1;
+        }
+    }
+
+    /** Called by the game loop for every key event a tick applies.
+     *
+     * @param keyCode the key code of the event.
+     * @param arrival the System.nanoTime() the event arrived in the key listener.
+     * @param tick the number of the tick applying it.
+     */
+    public void eventApplied(int keyCode, long arrival, long tick) {
+        int action = actionOf(keyCode);
+        if (action < 0) {
+            return;
+        }
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            dropped++;
+            return;
+        }
+        int slot = (int) t & mask;
+        arrivals[slot] = arrival;
+        ticks[slot] = tick;
+        actions[slot] = action;
+        tail.lazySet(t + 1);
+    }
+
+    /** Called by the painter after each frame. Completes the traces of all events applied up to the painted tick.
+     *
+     * @param tick the tick of the state the frame showed.
+     * @param now the System.nanoTime() when the frame was done.
+     */
+    public void frameShown(long tick, long now) {
+        long h = head.get();
+        long t = tail.get();
+        while (h < t) {
+            int slot = (int) h & mask;
+            if (ticks[slot] > tick) {
+                break; // Not on screen yet, and the later ones neither
+            }
+            histograms[actions[slot]].record(now - arrivals[slot]);
+            h++;
+        }
+        head.lazySet(h);
+    }
+
+    /** Gets the latency histogram of an action.
+     *
+     * @param action one of the ACTION_ constants.
+     * @return the histogram (key-to-frame latency in nanoseconds).
+     */
+    public LatencyHistogram getHistogram(int action) {
+        return histograms[action];
+    }
+
+    /** Formats the latency distribution of every action, one line per action.
+     *
+     * @return the report (times in milliseconds).
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder("key-to-frame latency (ms)\n");
+        for (int action = 0; action < histograms.length; action++) {
+            LatencyHistogram h = histograms[action];
+            report.append(String.format("%-7s n=%d mean=%.2f p50=%.2f p90=%.2f p99=%.2f max=%.2f%n",
+                    ACTION_NAMES[action], h.getCount(), h.getMeanNanos() / 1e6, h.getValueAtPercentile(50) / 1e6,
+                    h.getValueAtPercentile(90) / 1e6, h.getValueAtPercentile(99) / 1e6, h.getMaxNanos() / 1e6));
+        }
+        if (dropped > 0) {
+            report.append("dropped ").append(dropped).append(" traces\n");
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,268 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/** ParticleSystem simulates and draws the hit sparks, dust and impact effects.
+ *
+ * All particles live in preallocated arrays (one array per property, so the update loop streams through memory),
+ * and dead particles are removed by moving the last live particle into their slot. Nothing is allocated once the
+ * system is constructed, however many particles are spawned.
+ *
+ * The game logic thread spawns and updates the particles, and the painter draws them on its own thread.
+ * After each update the positions and colours are copied into one of three render buffers (triple buffering), so the
+ * painter always has a complete set to draw from without locks and without waiting for the logic.
+ */
+public class ParticleSystem {
+
+    // Kinds of particles
+    static final int KIND_SPARK = 0;
+    static final int KIND_DUST = 1;
+    static final int KIND_IMPACT = 2;
+
+    // Per kind: colours, lifetime in ticks, speed, gravity and drag
+    private static final int[][] KIND_COLORS = {
+        {0xFFFFF2A0, 0xFFFFC040, 0xFFFF8020},
+        {0xFFB09070, 0xFF8C7456, 0xFFD0C0A8},
+        {0xFFFFFFFF, 0xFFE0F0FF, 0xFFA0D0FF},
+    };
+    private static final int[] KIND_LIFE = {14, 24, 8};
+    private static final float[] KIND_SPEED = {9f, 2.5f, 14f};
+    private static final float[] KIND_GRAVITY = {0.5f, 0.05f, 0f};
+    private static final float[] KIND_DRAG = {0.92f, 0.9f, 0.8f};
+
+    private static final int NEW_DATA = 4; // Flag in ready: the middle buffer holds data the painter has not seen
+
+    // Simulation state, one entry per live particle
+    private final int capacity;
+    private final float[] x, y, vx, vy, gravity, drag;
+    private final int[] life, maxLife, color;
+    private int count;
+    private int seed = 0x2545F491;
+
+    // Render buffers: positions and premultiplied colours of the live particles after an update
+    private final int[][] renderX = new int[3][];
+    private final int[][] renderY = new int[3][];
+    private final int[][] renderColor = new int[3][];
+    private final int[] renderCount = new int[3];
+    private int back = 0;   // Written by the logic thread
+    private int front = 1;  // Read by the painter
+    private final AtomicInteger ready = new AtomicInteger(2);
+
+    // Rows of the layer the last draw wrote to, so only those are cleared
+    private int dirtyTop = 0, dirtyBottom = -1;
+
+    /** Constructs a particle system.
+     *
+     * @param capacity the maximum number of live particles, further spawns are ignored.
+     */
+    public ParticleSystem(int capacity) {
+        this.capacity = capacity;
+        x = new float[capacity];
+        y = new float[capacity];
+        vx = new float[capacity];
+        vy = new float[capacity];
+        gravity = new float[capacity];
+        drag = new float[capacity];
+        life = new int[capacity];
+        maxLife = new int[capacity];
+        color = new int[capacity];
+        for (int i = 0; i < 3; i++) {
+            renderX[i] = new int[capacity];
+            renderY[i] = new int[capacity];
+            renderColor[i] = new int[capacity];
+        }
+    }
+
+    /** Spawns a burst of particles flying out from a point. Called from the logic thread.
+     *
+     * @param kind one of the KIND_ constants.
+     * @param originX the x-coordinate in pixels.
+     * @param originY the y-coordinate in pixels.
+     * @param amount the number of particles.
+     * @param directionX -1 or 1 to throw the particles mostly left or right, 0 for all directions.
+     */
+    public void spawnBurst(int kind, float originX, float originY, int amount, int directionX) {
+        int[] colors = KIND_COLORS[kind];
+        float speed = KIND_SPEED[kind];
+        for (int n = 0; n < amount && count < capacity; n++) {
+            int i = count++;
+            float angle = nextFloat() * 6.2831855f;
+            float velocity = speed * (0.3f + 0.7f * nextFloat());
+            float dx = (float) Math.cos(angle) * velocity;
+            if (directionX != 0) {
+                dx = Math.abs(dx) * directionX;
+            }
+            x[i] = originX;
+            y[i] = originY;
+            vx[i] = dx;
+            vy[i] = (float) Math.sin(angle) * velocity - (kind == KIND_DUST ? speed * 0.5f : 0);
+            gravity[i] = KIND_GRAVITY[kind];
+            drag[i] = KIND_DRAG[kind];
+            maxLife[i] = KIND_LIFE[kind] + (nextInt() & 7);
+            life[i] = maxLife[i];
+            color[i] = colors[(nextInt() & 0xFF) % colors.length];
+        }
+    }
+
+    /** Moves all particles one tick, removes the dead ones and publishes the result for the painter.
+     * Called from the logic thread once per tick.
+     */
+    public void update() {
+        int n = count;
+        int i = 0;
+        while (i < n) {
+            if (--life[i] <= 0) {
+                n--;
+                moveParticle(n, i); // Fill the hole with the last particle and look at slot i again
+                continue;
+            }
+            vx[i] *= drag[i];
+            vy[i] = vy[i] * drag[i] + gravity[i];
+            x[i] += vx[i];
+            y[i] += vy[i];
+            i++;
+        }
+        count = n;
+        publish();
+    }
+
+    private void moveParticle(int from, int to) {
+        x[to] = x[from];
+        y[to] = y[from];
+        vx[to] = vx[from];
+        vy[to] = vy[from];
+        gravity[to] = gravity[from];
+        drag[to] = drag[from];
+        life[to] = life[from];
+        maxLife[to] = maxLife[from];
+        color[to] = color[from];
+    }
+
+    /** Copies the live particles into the back render buffer and swaps it with the middle one.
+     */
+    private void publish() {
+        renderCount[back] = render(renderX[back], renderY[back], renderColor[back]);
+        back = ready.getAndSet(back | NEW_DATA) & ~NEW_DATA;
+    }
+
+    /** Copies the positions and premultiplied colours of the live particles, the way they are drawn, e.g. to paint
+     * them in another game (see FrameExporter). Called from the logic thread.
+     *
+     * @param xs receives the x-coordinates, at least getCount() long.
+     * @param ys receives the y-coordinates, at least getCount() long.
+     * @param colors receives the premultiplied colours, at least getCount() long.
+     * @return the number of particles copied.
+     */
+    public int render(int[] xs, int[] ys, int[] colors) {
+        for (int i = 0; i < count; i++) {
+            xs[i] = (int) x[i];
+            ys[i] = (int) y[i];
+            int argb = color[i];
+            int alpha = 255 * life[i] / maxLife[i];
+            // Premultiply the colour with the remaining life, so particles fade out
+            int r = ((argb >> 16) & 0xFF) * alpha / 255;
+            int g = ((argb >> 8) & 0xFF) * alpha / 255;
+            int b = (argb & 0xFF) * alpha / 255;
+            colors[i] = (alpha << 24) | (r << 16) | (g << 8) | b;
+        }
+        return count;
+    }
+
+    /** Publishes particles rendered by another system (see render) to be drawn instead of this system's own, for a
+     * system that only shows particles and is never updated. Called from the thread that would call update.
+     *
+     * @param xs the x-coordinates.
+     * @param ys the y-coordinates.
+     * @param colors the premultiplied colours.
+     * @param n the number of particles, at most the capacity.
+     */
+    public void show(int[] xs, int[] ys, int[] colors, int n) {
+        System.arraycopy(xs, 0, renderX[back], 0, n);
+        System.arraycopy(ys, 0, renderY[back], 0, n);
+        System.arraycopy(colors, 0, renderColor[back], 0, n);
+        renderCount[back] = n;
+        back = ready.getAndSet(back | NEW_DATA) & ~NEW_DATA;
+    }
+
+    /** Draws the latest published particles as 2x2 pixel dots into an ARGB (premultiplied) pixel array.
+     * Only the rows written by the previous call are cleared first. Called from the painter thread.
+     *
+     * @param pixels the pixels of the particle layer, row by row.
+     * @param width the width of the layer.
+     * @param height the height of the layer.
+     * @return the number of particles drawn.
+     */
+    public int draw(int[] pixels, int width, int height) {
+        if ((ready.get() & NEW_DATA) != 0) {
+            front = ready.getAndSet(front) & ~NEW_DATA;
+        }
+        if (dirtyBottom >= dirtyTop) {
+            Arrays.fill(pixels, dirtyTop * width, Math.min(dirtyBottom + 2, height) * width, 0);
+        }
+
+        int[] fx = renderX[front];
+        int[] fy = renderY[front];
+        int[] fc = renderColor[front];
+        int n = renderCount[front];
+        int top = height;
+        int bottom = -1;
+        for (int i = 0; i < n; i++) {
+            int px = fx[i];
+            int py = fy[i];
+            if (px < 0 || py < 0 || px >= width - 1 || py >= height - 1) {
+                continue;
+            }
+            int index = py * width + px;
+            int argb = fc[i];
+            pixels[index] = argb;
+            pixels[index + 1] = argb;
+            pixels[index + width] = argb;
+            pixels[index + width + 1] = argb;
+            if (py < top) {
+                top = py;
+            }
+            if (py > bottom) {
+                bottom = py;
+            }
+        }
+        dirtyTop = top;
+        dirtyBottom = bottom;
+        return n;
+    }
+
+    /** Forgets the rows written by the last draw, e.g. after the layer was replaced by a new, empty one.
+     */
+    public void resetDirtyRows() {
+        dirtyTop = 0;
+        dirtyBottom = -1;
+    }
+
+    /**
+     * @return the number of live particles (as seen by the logic thread).
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the maximum number of live particles.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** A xorshift random number generator, so spawning allocates nothing and needs no synchronisation.
+     */
+    private int nextInt() {
+        int s = seed;
+        s ^= s << 13;
+        s ^= s >>> 17;
+        s ^= s << 5;
+        seed = s;
+        return s;
+    }
+
+    private float nextFloat() {
+        return (nextInt() >>> 8) * (1.0f / (1 << 24));
+    }
+}
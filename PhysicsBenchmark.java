@@ -0,0 +1,153 @@
+/** PhysicsBenchmark compares the fixed-point jumping physics with the previous implementation
+ * (a double velocity added to an int position). Both run the same loop over many bodies that keep jumping,
+ * the way GameLogic.applyJumpingPhysics does it for each player.
+ *
+ * Run with: java PhysicsBenchmark [bodies] [ticks]
+ * Besides the timings it prints a checksum of the fixed-point run, which has to be the same on every JVM.
+ */
+public class PhysicsBenchmark {
+
+    // The constants of the previous, floating-point physics
+    private static final double DOUBLE_GRAVITY = 0.4;
+    private static final double DOUBLE_JUMP_SPEED = 8;
+    private static final int DOUBLE_GROUND_LEVEL = 340;
+
+    /** Runs the benchmark.
+     * @param args optionally the number of bodies and the number of ticks.
+     */
+    public static void main(String[] args) {
+        int bodies = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        System.out.println("Single jump: double lands after " + doubleJumpTicks() + " ticks (apex "
+                + doubleJumpApex() + " px), fixed-point after " + fixedJumpTicks() + " ticks (apex "
+                + fixedJumpApex() + " px)");
+
+        long checksum = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            long doubleResult = runDouble(bodies, ticks);
+            long doubleNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            checksum = runFixed(bodies, ticks);
+            long fixedNanos = System.nanoTime() - start;
+
+            double steps = (double) bodies * ticks;
+            System.out.printf("round %d: double %.2f ns/step, fixed-point %.2f ns/step (%d / %d)%n", round,
+                    doubleNanos / steps, fixedNanos / steps, doubleResult, checksum);
+        }
+        System.out.println("fixed-point checksum: " + checksum);
+    }
+
+    /** The previous physics: int position, double velocity and gravity.
+     */
+    private static long runDouble(int bodies, int ticks) {
+        int[] y = new int[bodies];
+        double[] velocity = new double[bodies];
+        boolean[] jumping = new boolean[bodies];
+        long landings = 0;
+        for (int i = 0; i < bodies; i++) {
+            y[i] = DOUBLE_GROUND_LEVEL;
+        }
+        for (int tick = 0; tick < ticks; tick++) {
+            for (int i = 0; i < bodies; i++) {
+                if (!jumping[i]) {
+                    jumping[i] = true;
+                    velocity[i] = -DOUBLE_JUMP_SPEED - (i & 3);
+                }
+                y[i] += velocity[i];
+                velocity[i] += DOUBLE_GRAVITY;
+                if (y[i] >= DOUBLE_GROUND_LEVEL) {
+                    y[i] = DOUBLE_GROUND_LEVEL;
+                    velocity[i] = 0;
+                    jumping[i] = false;
+                    landings++;
+                }
+            }
+        }
+        return landings;
+    }
+
+    /** The fixed-point physics, same loop as runDouble.
+     *
+     * @return a checksum over all landings and final positions.
+     */
+    private static long runFixed(int bodies, int ticks) {
+        int[] y = new int[bodies];
+        int[] velocity = new int[bodies];
+        boolean[] jumping = new boolean[bodies];
+        long checksum = 0;
+        for (int i = 0; i < bodies; i++) {
+            y[i] = FixedPhysics.GROUND_LEVEL;
+        }
+        for (int tick = 0; tick < ticks; tick++) {
+            for (int i = 0; i < bodies; i++) {
+                if (!jumping[i]) {
+                    jumping[i] = true;
+                    velocity[i] = -FixedPhysics.JUMP_SPEED - FixedPhysics.toFixed(i & 3);
+                }
+                y[i] += velocity[i];
+                velocity[i] += FixedPhysics.GRAVITY;
+                if (y[i] >= FixedPhysics.GROUND_LEVEL) {
+                    y[i] = FixedPhysics.GROUND_LEVEL;
+                    velocity[i] = 0;
+                    jumping[i] = false;
+                    checksum += tick;
+                }
+            }
+        }
+        for (int i = 0; i < bodies; i++) {
+            checksum = checksum * 31 + y[i];
+        }
+        return checksum;
+    }
+
+    private static int doubleJumpTicks() {
+        int y = DOUBLE_GROUND_LEVEL;
+        double velocity = -DOUBLE_JUMP_SPEED;
+        int ticks = 0;
+        do {
+            y += velocity;
+            velocity += DOUBLE_GRAVITY;
+            ticks++;
+        } while (y < DOUBLE_GROUND_LEVEL);
+        return ticks;
+    }
+
+    private static int doubleJumpApex() {
+        int y = DOUBLE_GROUND_LEVEL;
+        int apex = y;
+        double velocity = -DOUBLE_JUMP_SPEED;
+        do {
+            y += velocity;
+            velocity += DOUBLE_GRAVITY;
+            apex = Math.min(apex, y);
+        } while (y < DOUBLE_GROUND_LEVEL);
+        return DOUBLE_GROUND_LEVEL - apex;
+    }
+
+    private static int fixedJumpTicks() {
+        int y = FixedPhysics.GROUND_LEVEL;
+        int velocity = -FixedPhysics.JUMP_SPEED;
+        int ticks = 0;
+        do {
+            y += velocity;
+            velocity += FixedPhysics.GRAVITY;
+            ticks++;
+        } while (y < FixedPhysics.GROUND_LEVEL);
+        return ticks;
+    }
+
+    private static int fixedJumpApex() {
+        int y = FixedPhysics.GROUND_LEVEL;
+        int apex = y;
+        int velocity = -FixedPhysics.JUMP_SPEED;
+        do {
+            y += velocity;
+            velocity += FixedPhysics.GRAVITY;
+            apex = Math.min(apex, y);
+        } while (y < FixedPhysics.GROUND_LEVEL);
+        return FixedPhysics.toPixels(FixedPhysics.GROUND_LEVEL - apex);
+    }
+}
@@ -0,0 +1,31 @@
+/** SnapshotBuffer hands snapshots from the game loop thread to the painter. It always holds the last two,
+ * published together in one volatile write so the painter never sees a mismatched pair.
+ */
+public class SnapshotBuffer {
+
+    private volatile GameSnapshot[] latest;
+
+    /** Constructs a buffer holding an initial snapshot (used as both the previous and the current one).
+     *
+     * @param initial the state before the first tick.
+     */
+    public SnapshotBuffer(GameSnapshot initial) {
+        latest = new GameSnapshot[] {initial, initial};
+    }
+
+    /** Publishes the snapshot of a finished tick. The current snapshot becomes the previous one.
+     *
+     * @param snapshot the new snapshot.
+     */
+    public void publish(GameSnapshot snapshot) {
+        latest = new GameSnapshot[] {latest[1], snapshot};
+    }
+
+    /** Gets the last two snapshots.
+     *
+     * @return a two element array: the previous snapshot and the current one. Must not be modified.
+     */
+    public GameSnapshot[] getLatest() {
+        return latest;
+    }
+}
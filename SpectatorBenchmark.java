@@ -0,0 +1,139 @@
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+
+/** SpectatorBenchmark feeds a simulated match (both fighters running, jumping and trading hits) through a
+ * SpectatorFeed with a growing number of subscribers. It reports the frame size, the bandwidth per viewer at
+ * 30 ticks per second, and the time spent per tick on encoding and on the fan-out. One subscriber decodes every
+ * frame and checks it against the original snapshot.
+ *
+ * Run with: java SpectatorBenchmark [ticks]
+ */
+public class SpectatorBenchmark {
+
+    /** Runs the benchmark.
+     * @param args optionally the number of ticks per round.
+     */
+    public static void main(String[] args) {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int[] audiences = {1, 100, 1_000, 10_000, 100_000};
+
+        System.out.println("viewers  bytes/frame  kbit/s/viewer  us/tick  ns/viewer/tick");
+        for (int viewers : audiences) {
+            SpectatorFeed feed = new SpectatorFeed();
+            CheckingViewer checker = new CheckingViewer();
+            feed.subscribe(checker);
+            CountingViewer counter = new CountingViewer();
+            for (int i = 1; i < viewers; i++) {
+                feed.subscribe(counter);
+            }
+
+            Match match = new Match(7);
+            for (int i = 0; i < ticks / 4; i++) { // Warm-up
+                checker.expected = match.next();
+                feed.publish(checker.expected);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < ticks; i++) {
+                checker.expected = match.next();
+                feed.publish(checker.expected);
+            }
+            long nanos = System.nanoTime() - start;
+
+            double bytesPerFrame = feed.getAverageFrameBytes();
+            System.out.printf("%7d  %11.2f  %13.2f  %7.2f  %14.1f%n", viewers, bytesPerFrame,
+                    bytesPerFrame * 8 * 30 / 1000, nanos / 1000.0 / ticks, (double) nanos / ticks / viewers);
+            if (checker.mismatches > 0) {
+                System.out.println("  decode mismatches: " + checker.mismatches);
+            }
+        }
+    }
+
+    /** A subscriber that only looks at the frame size, like a server handing the bytes to a socket would.
+     */
+    private static class CountingViewer implements SpectatorFeed.Subscriber {
+        private long bytes;
+
+        @Override
+        public void onFrame(ByteBuffer frame) {
+            bytes += frame.remaining();
+        }
+    }
+
+    /** A subscriber that decodes every frame and compares it with the snapshot that was published.
+     */
+    private static class CheckingViewer implements SpectatorFeed.Subscriber {
+        private final SpectatorCodec codec = new SpectatorCodec();
+        private GameSnapshot last;
+        private GameSnapshot expected;
+        private long mismatches;
+
+        @Override
+        public void onFrame(ByteBuffer frame) {
+            GameSnapshot decoded = codec.decode(last, frame, 0);
+            if (decoded == null) {
+                return;
+            }
+            last = decoded;
+            if (decoded.getTick() != expected.getTick() || decoded.getPlayer1X() != expected.getPlayer1X()
+                    || decoded.getPlayer1Y() != expected.getPlayer1Y() || decoded.getPlayer2X() != expected.getPlayer2X()
+                    || decoded.getPlayer2Y() != expected.getPlayer2Y() || decoded.getPlayer1Frame() != expected.getPlayer1Frame()
+                    || decoded.getPlayer2State() != expected.getPlayer2State()
+                    || decoded.getPlayer1Health() != expected.getPlayer1Health()
+                    || decoded.isPlayer2FacingRight() != expected.isPlayer2FacingRight()
+                    || !decoded.getResultMessage().equals(expected.getResultMessage())) {
+                mismatches++;
+            }
+        }
+    }
+
+    /** Generates a plausible stream of snapshots: fighters running back and forth, jumping, attacking and
+     * losing health, with the animation frames advancing every tick.
+     */
+    private static class Match {
+        private final SplittableRandom random;
+        private long tick;
+        private int x1 = FixedPhysics.toFixed(50), x2 = FixedPhysics.toFixed(400);
+        private int y1 = FixedPhysics.GROUND_LEVEL, y2 = FixedPhysics.GROUND_LEVEL;
+        private int vy1, vy2, dir1, dir2, state1, state2, frame1, frame2;
+        private int health1 = 100, health2 = 100;
+
+        Match(long seed) {
+            random = new SplittableRandom(seed);
+        }
+
+        GameSnapshot next() {
+            tick++;
+            if (random.nextInt(15) == 0) {
+                dir1 = random.nextInt(3) - 1;
+            }
+            if (random.nextInt(15) == 0) {
+                dir2 = random.nextInt(3) - 1;
+            }
+            if (y1 == FixedPhysics.GROUND_LEVEL && random.nextInt(40) == 0) {
+                vy1 = -FixedPhysics.JUMP_SPEED;
+            }
+            if (y2 == FixedPhysics.GROUND_LEVEL && random.nextInt(40) == 0) {
+                vy2 = -FixedPhysics.JUMP_SPEED;
+            }
+            x1 += dir1 * FixedPhysics.RUN_SPEED;
+            x2 += dir2 * FixedPhysics.RUN_SPEED;
+            y1 = Math.min(FixedPhysics.GROUND_LEVEL, y1 + vy1);
+            y2 = Math.min(FixedPhysics.GROUND_LEVEL, y2 + vy2);
+            vy1 = y1 == FixedPhysics.GROUND_LEVEL ? 0 : vy1 + FixedPhysics.GRAVITY;
+            vy2 = y2 == FixedPhysics.GROUND_LEVEL ? 0 : vy2 + FixedPhysics.GRAVITY;
+            state1 = vy1 != 0 ? GameLogic.STATE_JUMP : dir1 != 0 ? GameLogic.STATE_RUN : GameLogic.STATE_IDLE;
+            state2 = vy2 != 0 ? GameLogic.STATE_JUMP : dir2 != 0 ? GameLogic.STATE_RUN : GameLogic.STATE_IDLE;
+            frame1 = (frame1 + 1) % CombatGame.FRAMES_PER_ACTION[state1];
+            frame2 = (frame2 + 1) % CombatGame.FRAMES_PER_ACTION[state2];
+            if (random.nextInt(60) == 0) {
+                health1 = health1 > 10 ? health1 - 10 : 100;
+            }
+            if (random.nextInt(60) == 0) {
+                health2 = health2 > 10 ? health2 - 10 : 100;
+            }
+            return new GameSnapshot(tick, 0, x1, y1, x2, y2, state1, state2, frame1, frame2, dir1 >= 0, dir2 <= 0,
+                    health1, health2, false, "");
+        }
+    }
+}
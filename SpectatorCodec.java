@@ -0,0 +1,222 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+/** SpectatorCodec encodes a GameSnapshot as the difference to the previous one, bit-packed, and decodes it again.
+ *
+ * A frame starts with a keyframe bit (a keyframe is encoded against an all-zero state, so a viewer can start from
+ * it), the tick number for keyframes, and a bit mask of the fields that changed. Only changed fields follow:
+ * integers as zigzag deltas with a 2-bit size class (4, 8, 16 or 32 bits), booleans as nothing at all (a change
+ * of a boolean is a flip), and the result message as UTF-8 bytes. A typical frame while both fighters move is
+ * a handful of bytes.
+ *
+ * A codec keeps a little bit-buffering state, so each encoder or decoder needs its own instance.
+ */
+public class SpectatorCodec {
+
+    // Fields, in the order of the change mask
+    private static final int FIELD_PLAYER1_X = 0;
+    private static final int FIELD_PLAYER1_Y = 1;
+    private static final int FIELD_PLAYER2_X = 2;
+    private static final int FIELD_PLAYER2_Y = 3;
+    private static final int FIELD_PLAYER1_STATE = 4;
+    private static final int FIELD_PLAYER2_STATE = 5;
+    private static final int FIELD_PLAYER1_FRAME = 6;
+    private static final int FIELD_PLAYER2_FRAME = 7;
+    private static final int FIELD_PLAYER1_HEALTH = 8;
+    private static final int FIELD_PLAYER2_HEALTH = 9;
+    private static final int INT_FIELDS = 10;
+    private static final int FIELD_PLAYER1_FACING = 10;
+    private static final int FIELD_PLAYER2_FACING = 11;
+    private static final int FIELD_GAME_ENDED = 12;
+    private static final int FIELD_RESULT = 13;
+    private static final int FIELD_COUNT = 14;
+
+    private static final int TICK_BITS = 40;
+
+    /** The state a keyframe is encoded against: everything zero/false/empty. */
+    static final GameSnapshot EMPTY = new GameSnapshot(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, false, false, 0, 0, false, "");
+
+    /** The longest frame an encoding can produce, in bytes. */
+    static final int MAX_FRAME_BYTES = 64 + 256 * 3;
+
+    // Bit buffering state
+    private long bits;
+    private int bitCount;
+    private ByteBuffer buffer;
+
+    /** Encodes a snapshot.
+     *
+     * @param previous the snapshot the receivers already have (ignored for keyframes).
+     * @param current the snapshot to send.
+     * @param keyframe true to encode the full state, so a receiver without a previous state can decode it.
+     * @param out the buffer to write into, from its position (needs MAX_FRAME_BYTES of room).
+     */
+    public void encode(GameSnapshot previous, GameSnapshot current, boolean keyframe, ByteBuffer out) {
+        GameSnapshot base = keyframe ? EMPTY : previous;
+        buffer = out;
+        bits = 0;
+        bitCount = 0;
+
+        writeBits(keyframe ? 1 : 0, 1);
+        if (keyframe) {
+            writeBits(current.getTick(), TICK_BITS);
+        }
+        int changed = 0;
+        for (int field = 0; field < INT_FIELDS; field++) {
+            if (intField(base, field) != intField(current, field)) {
+                changed |= 1 << field;
+            }
+        }
+        if (base.isPlayer1FacingRight() != current.isPlayer1FacingRight()) {
+            changed |= 1 << FIELD_PLAYER1_FACING;
+        }
+        if (base.isPlayer2FacingRight() != current.isPlayer2FacingRight()) {
+            changed |= 1 << FIELD_PLAYER2_FACING;
+        }
+        if (base.isGameEnded() != current.isGameEnded()) {
+            changed |= 1 << FIELD_GAME_ENDED;
+        }
+        if (!base.getResultMessage().equals(current.getResultMessage())) {
+            changed |= 1 << FIELD_RESULT;
+        }
+        writeBits(changed, FIELD_COUNT);
+
+        for (int field = 0; field < INT_FIELDS; field++) {
+            if ((changed & (1 << field)) != 0) {
+                writeDelta(intField(current, field) - intField(base, field));
+            }
+        }
+        if ((changed & (1 << FIELD_RESULT)) != 0) {
+            byte[] message = current.getResultMessage().getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(message.length, 255);
+            writeBits(length, 8);
+            for (int i = 0; i < length; i++) {
+                writeBits(message[i] & 0xFF, 8);
+            }
+        }
+        flush();
+        buffer = null;
+    }
+
+    /** Decodes a frame.
+     *
+     * @param previous the last decoded snapshot (ignored for keyframes, may be null then).
+     * @param in the frame, from its position to its limit. The position is not changed.
+     * @param receivedNanos the System.nanoTime() to store as the tick time of the decoded snapshot.
+     * @return the decoded snapshot, or null if the frame is a delta and there is no previous snapshot.
+     */
+    public GameSnapshot decode(GameSnapshot previous, ByteBuffer in, long receivedNanos) {
+        buffer = in.duplicate();
+        bits = 0;
+        bitCount = 0;
+
+        boolean keyframe = readBits(1) == 1;
+        if (!keyframe && previous == null) {
+            buffer = null;
+            return null;
+        }
+        GameSnapshot base = keyframe ? EMPTY : previous;
+        long tick = keyframe ? readBits(TICK_BITS) : previous.getTick() + 1;
+        int changed = (int) readBits(FIELD_COUNT);
+
+        int[] values = new int[INT_FIELDS];
+        for (int field = 0; field < INT_FIELDS; field++) {
+            values[field] = intField(base, field);
+            if ((changed & (1 << field)) != 0) {
+                values[field] += readDelta();
+            }
+        }
+        boolean player1FacingRight = base.isPlayer1FacingRight() ^ ((changed & (1 << FIELD_PLAYER1_FACING)) != 0);
+        boolean player2FacingRight = base.isPlayer2FacingRight() ^ ((changed & (1 << FIELD_PLAYER2_FACING)) != 0);
+        boolean gameEnded = base.isGameEnded() ^ ((changed & (1 << FIELD_GAME_ENDED)) != 0);
+        String resultMessage = base.getResultMessage();
+        if ((changed & (1 << FIELD_RESULT)) != 0) {
+            byte[] message = new byte[(int) readBits(8)];
+            for (int i = 0; i < message.length; i++) {
+                message[i] = (byte) readBits(8);
+            }
+            resultMessage = new String(message, StandardCharsets.UTF_8);
+        }
+        buffer = null;
+
+        return new GameSnapshot(tick, receivedNanos, values[FIELD_PLAYER1_X], values[FIELD_PLAYER1_Y],
+                values[FIELD_PLAYER2_X], values[FIELD_PLAYER2_Y], values[FIELD_PLAYER1_STATE],
+                values[FIELD_PLAYER2_STATE], values[FIELD_PLAYER1_FRAME], values[FIELD_PLAYER2_FRAME],
+                player1FacingRight, player2FacingRight, values[FIELD_PLAYER1_HEALTH], values[FIELD_PLAYER2_HEALTH],
+                gameEnded, resultMessage);
+    }
+
+    private static int intField(GameSnapshot snapshot, int field) {
+        switch (field) {
+            case FIELD_PLAYER1_X: return snapshot.getPlayer1X();
+            case FIELD_PLAYER1_Y: return snapshot.getPlayer1Y();
+            case FIELD_PLAYER2_X: return snapshot.getPlayer2X();
+            case FIELD_PLAYER2_Y: return snapshot.getPlayer2Y();
+            case FIELD_PLAYER1_STATE: return snapshot.getPlayer1State();
+            case FIELD_PLAYER2_STATE: return snapshot.getPlayer2State();
+            case FIELD_PLAYER1_FRAME: return snapshot.getPlayer1Frame();
+            case FIELD_PLAYER2_FRAME: return snapshot.getPlayer2Frame();
+            case FIELD_PLAYER1_HEALTH: return snapshot.getPlayer1Health();
+            default: return snapshot.getPlayer2Health();
+        }
+    }
+
+    /** Writes a signed delta: zigzag encoded, with a 2-bit size class in front.
+     */
+    private void writeDelta(int delta) {
+        long zigzag = ((long) delta << 1) ^ (delta >> 31);
+        zigzag &= 0xFFFFFFFFL;
+        if (zigzag < (1 << 4)) {
+            writeBits(0, 2);
+            writeBits(zigzag, 4);
+        } else if (zigzag < (1 << 8)) {
+            writeBits(1, 2);
+            writeBits(zigzag, 8);
+        } else if (zigzag < (1 << 16)) {
+            writeBits(2, 2);
+            writeBits(zigzag, 16);
+        } else {
+            writeBits(3, 2);
+            writeBits(zigzag, 32);
+        }
+    }
+
+    private int readDelta() {
+        int sizeClass = (int) readBits(2);
+        int zigzag = (int) readBits(sizeClass == 3 ? 32 : 4 << sizeClass);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    /** Appends the lowest count bits of value (count at most 40), writing out whole bytes as they fill up.
+     */
+    private void writeBits(long value, int count) {
+        bits |= (value & ((1L << count) - 1)) << bitCount;
+        bitCount += count;
+        while (bitCount >= 8) {
+            buffer.put((byte) bits);
+            bits >>>= 8;
+            bitCount -= 8;
+        }
+    }
+
+    private void flush() {
+        if (bitCount > 0) {
+            buffer.put((byte) bits);
+        }
+        bits = 0;
+        bitCount = 0;
+    }
+
+    private long readBits(int count) {
+        while (bitCount < count) {
+            long next = buffer.hasRemaining() ? buffer.get() & 0xFF : 0;
+            bits |= next << bitCount;
+            bitCount += 8;
+        }
+        long value = bits & ((1L << count) - 1);
+        bits >>>= count;
+        bitCount -= count;
+        return value;
+    }
+}
@@ -0,0 +1,122 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/** SpectatorFeed broadcasts a match to read-only viewers. Every tick the game loop publishes its snapshot,
+ * which is encoded once (see SpectatorCodec) and handed to all subscribers as a read-only view of the same bytes,
+ * so the cost per viewer is one small ByteBuffer view and no copying or re-encoding.
+ *
+ * Frames are encoded into a ring of buffers, allocated as the first subscriber needs them (a feed nobody watches,
+ * like that of an arena, costs nothing). A frame stays valid for FRAME_RING ticks after it was published, so a
+ * subscriber that hands it on asynchronously (e.g. to a socket) has that long before the bytes are reused, and
+ * must copy it if it needs it longer. Every KEYFRAME_INTERVAL ticks, and on the tick after a new
+ * subscriber joins, a keyframe with the full state is sent instead of a delta.
+ */
+public class SpectatorFeed {
+
+    static final int FRAME_RING = 64;
+    static final int KEYFRAME_INTERVAL = 60;
+
+    /** Receives the frames of a feed. Called on the game loop thread, so it must not block.
+     */
+    public interface Subscriber {
+
+        /** Called once per tick with the encoded frame.
+         *
+         * @param frame the frame, a read-only view from its position to its limit.
+         */
+        void onFrame(ByteBuffer frame);
+    }
+
+    // fields
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final SpectatorCodec codec = new SpectatorCodec();
+    private final ByteBuffer[] ring = new ByteBuffer[FRAME_RING];
+    private int ringIndex = 0;
+    private GameSnapshot previous;
+    private long framesSinceKeyframe = KEYFRAME_INTERVAL;
+    private volatile boolean keyframeRequested;
+
+    private volatile long frames, bytes, keyframes;
+
+    /** Adds a viewer. It starts receiving frames with the next keyframe, which is sent on the next tick.
+     *
+     * @param subscriber the viewer.
+     */
+    public void subscribe(Subscriber subscriber) {
+        subscribers.add(subscriber);
+        keyframeRequested = true;
+    }
+
+    /** Removes a viewer.
+     *
+     * @param subscriber the viewer.
+     */
+    public void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /** Encodes the state of a tick and sends it to every subscriber. Called from the game loop thread.
+     * Nothing is encoded while nobody is watching.
+     *
+     * @param snapshot the state after the tick.
+     */
+    public void publish(GameSnapshot snapshot) {
+        if (subscribers.isEmpty()) {
+            previous = null;
+            return;
+        }
+        boolean keyframe = previous == null || keyframeRequested || framesSinceKeyframe >= KEYFRAME_INTERVAL;
+        if (keyframe) {
+            keyframeRequested = false;
+            framesSinceKeyframe = 0;
+            keyframes++;
+        }
+        framesSinceKeyframe++;
+
+        ByteBuffer buffer = ring[ringIndex];
+        if (buffer == null) {
+            buffer = ring[ringIndex] = ByteBuffer.allocateDirect(SpectatorCodec.MAX_FRAME_BYTES);
+        }
+        ringIndex = (ringIndex + 1) % FRAME_RING;
+        buffer.clear();
+        codec.encode(previous, snapshot, keyframe, buffer);
+        buffer.flip();
+        previous = snapshot;
+        frames++;
+        bytes += buffer.remaining();
+
+        for (Subscriber subscriber : subscribers) {
+            subscriber.onFrame(buffer.asReadOnlyBuffer());
+        }
+    }
+
+    /**
+     * @return the number of subscribers.
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * @return the average size of an encoded frame in bytes.
+     */
+    public double getAverageFrameBytes() {
+        long count = frames;
+        return count == 0 ? 0 : (double) bytes / count;
+    }
+
+    /**
+     * @return the number of frames encoded so far.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return the number of keyframes among them.
+     */
+    public long getKeyframes() {
+        return keyframes;
+    }
+}
@@ -0,0 +1,55 @@
+import java.nio.ByteBuffer;
+import javax.swing.JFrame;
+
+
+/** SpectatorViewer is a local, read-only viewer of a match: it decodes the frames of a SpectatorFeed into
+ * snapshots and publishes them to a SnapshotBuffer, which a spectator CombatGame panel paints with GamePainter
+ * exactly like the match itself.
+ */
+public class SpectatorViewer implements SpectatorFeed.Subscriber {
+
+    // fields
+    private final SpectatorCodec codec = new SpectatorCodec();
+    private final SnapshotBuffer snapshots;
+    private GameSnapshot last;
+
+    /** Constructs a viewer that decodes into a snapshot buffer.
+     *
+     * @param snapshots the buffer the decoded snapshots are published to.
+     */
+    public SpectatorViewer(SnapshotBuffer snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    /** Decodes a frame and publishes the snapshot. Frames before the first keyframe are skipped.
+     *
+     * @param frame the encoded frame.
+     */
+    @Override
+    public void onFrame(ByteBuffer frame) {
+        GameSnapshot snapshot = codec.decode(last, frame, System.nanoTime());
+        if (snapshot != null) {
+            last = snapshot;
+            snapshots.publish(snapshot);
+        }
+    }
+
+    /** Opens a spectator window watching a game. Must be called on the EDT.
+     *
+     * @param game the game to watch.
+     */
+    public static void open(CombatGame game) {
+        JFrame frame = new JFrame("Arena - Spectator");
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        CombatGame spectator = new CombatGame(game.getSpectatorFeed(), game.getTickPeriodNanos());
+        frame.add(spectator);
+        frame.pack();
+        frame.setVisible(true);
+        frame.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                spectator.stopSpectating();
+            }
+        });
+    }
+}
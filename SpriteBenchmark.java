@@ -0,0 +1,138 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+
+/** SpriteBenchmark compares the old way of loading sprites (getSubimage views of the decoded sheets) with the
+ * SpriteStore. It loads the fighter's sheets once per simulated character and reports the retained heap per
+ * character (measured after a GC), and then the time to draw a frame scaled like GamePainter does.
+ *
+ * Run with: java -Djava.awt.headless=true SpriteBenchmark [characters]
+ */
+public class SpriteBenchmark {
+
+    private static final String[] SHEETS = {"Idle.png", "Run.png", "Attack1.png", "Jump.png"};
+    private static final int FRAME_SIZE = 200;
+    private static final int DRAWS = 20_000;
+
+    /** Runs the benchmark.
+     * @param args optionally the number of characters to load.
+     */
+    public static void main(String[] args) throws IOException {
+        int characters = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+
+        List<Object> retained = new ArrayList<>();
+        long before = usedHeap();
+        for (int i = 0; i < characters; i++) {
+            retained.add(loadSubimages());
+        }
+        long subimageBytes = (usedHeap() - before) / characters;
+        retained.clear();
+
+        before = usedHeap();
+        List<SpriteStore> stores = new ArrayList<>();
+        for (int i = 0; i < characters; i++) {
+            stores.add(loadStore(0));
+        }
+        long coldBytes = (usedHeap() - before) / characters;
+        stores.clear();
+
+        before = usedHeap();
+        for (int i = 0; i < characters; i++) {
+            SpriteStore store = loadStore(SpriteStore.DEFAULT_HOT_FRAMES);
+            for (int sheet = 0; sheet < SHEETS.length; sheet++) {
+                for (SpriteStore.Frame frame : loadFrames(store, sheet)) {
+                    frame.getImage(); // Everything hot
+                }
+            }
+            stores.add(store);
+        }
+        long hotBytes = (usedHeap() - before) / characters;
+
+        System.out.println("retained heap per character (" + characters + " characters loaded):");
+        System.out.printf("  sheets + getSubimage:   %8d KB%n", subimageBytes >> 10);
+        System.out.printf("  SpriteStore, cold:      %8d KB (pixel data %d KB)%n", coldBytes >> 10,
+                stores.get(0).getCompactBytes() >> 10);
+        System.out.printf("  SpriteStore, all hot:   %8d KB (pixel data %d KB)%n", hotBytes >> 10,
+                (stores.get(0).getCompactBytes() + stores.get(0).getHotBytes()) >> 10);
+
+        // Drawing, scaled by SPRITE_SCALE like GamePainter
+        BufferedImage screen = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = screen.createGraphics();
+        BufferedImage[] subimages = loadSubimages()[2];
+        SpriteStore.Frame[] frames = loadFrames(stores.get(0), 2);
+        int scale = CombatGame.SPRITE_SCALE;
+        for (int round = 0; round < 2; round++) { // The first round is warm-up
+            long start = System.nanoTime();
+            for (int i = 0; i < DRAWS; i++) {
+                g.drawImage(subimages[i % subimages.length], 0, 0, FRAME_SIZE * scale, FRAME_SIZE * scale, null);
+            }
+            long subimageNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < DRAWS; i++) {
+                SpriteStore.Frame frame = frames[i % frames.length];
+                g.drawImage(frame.getImage(), frame.getOffsetX() * scale, frame.getOffsetY() * scale,
+                        frame.getWidth() * scale, frame.getHeight() * scale, null);
+            }
+            long hotNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < DRAWS; i++) {
+                SpriteStore.Frame frame = frames[i % frames.length];
+                g.drawImage(frame.getCompactImage(), frame.getOffsetX() * scale, frame.getOffsetY() * scale,
+                        frame.getWidth() * scale, frame.getHeight() * scale, null);
+            }
+            long indexedNanos = System.nanoTime() - start;
+            if (round == 1) {
+                System.out.println("draw time per frame (Attack1, scaled x" + scale + "):");
+                System.out.printf("  full frame (subimage):  %8.1f us%n", subimageNanos / 1e3 / DRAWS);
+                System.out.printf("  cropped, hot ARGB_PRE:  %8.1f us%n", hotNanos / 1e3 / DRAWS);
+                System.out.printf("  cropped, indexed:       %8.1f us%n", indexedNanos / 1e3 / DRAWS);
+            }
+        }
+    }
+
+    /** Loads the sheets the way CombatGame used to: frames are getSubimage views, which keep the sheets alive.
+     */
+    private static BufferedImage[][] loadSubimages() throws IOException {
+        BufferedImage[][] sprites = new BufferedImage[SHEETS.length][];
+        for (int i = 0; i < SHEETS.length; i++) {
+            BufferedImage sheet = ImageIO.read(new File(SHEETS[i]));
+            sprites[i] = new BufferedImage[CombatGame.FRAMES_PER_ACTION[i]];
+            for (int frame = 0; frame < sprites[i].length; frame++) {
+                sprites[i][frame] = sheet.getSubimage(frame * FRAME_SIZE, 0, FRAME_SIZE, FRAME_SIZE);
+            }
+        }
+        return sprites;
+    }
+
+    private static SpriteStore loadStore(int hotFrames) throws IOException {
+        SpriteStore store = new SpriteStore(hotFrames);
+        for (int sheet = 0; sheet < SHEETS.length; sheet++) {
+            loadFrames(store, sheet);
+        }
+        return store;
+    }
+
+    /** Loads a sheet into a store (or gets its frames if it is loaded already). The sheets are in the order of the
+     * GameLogic states, so FRAMES_PER_ACTION has their frame counts.
+     */
+    private static SpriteStore.Frame[] loadFrames(SpriteStore store, int sheet) throws IOException {
+        return store.load(SHEETS[sheet], FRAME_SIZE, FRAME_SIZE, CombatGame.FRAMES_PER_ACTION[sheet]);
+    }
+
+    /** Gets the used heap after collecting garbage (a few times, to let the collector settle).
+     */
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
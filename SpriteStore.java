@@ -0,0 +1,218 @@
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+
+/** SpriteStore loads sprite sheets into compact frames that do not keep the sheets alive.
+ *
+ * Each frame is cropped to the bounds of its opaque pixels (the offset of the crop inside the full frame is kept),
+ * and stored as an indexed-color image with one byte per pixel when it has at most 256 colors (every sheet of the
+ * game has fewer than 30), or as a cropped ARGB copy otherwise. That cold form is what stays resident: a 200x200
+ * fighter frame shrinks from 160 KB (plus its share of the sheet) to about 2 KB.
+ *
+ * Frames whose pixels are all either opaque or fully transparent (pixel art like ours) are drawn straight from
+ * the indexed image: Java2D blits those with a transparency mask instead of blending, which is faster than drawing
+ * a premultiplied ARGB copy (see SpriteBenchmark). Frames with translucent pixels need blending, so the ones being
+ * drawn are expanded to TYPE_INT_ARGB_PRE on first use and kept in a small LRU cache of hot frames.
+ * Sheets are loaded once per store, so all games in a process can share one store.
+ */
+public class SpriteStore {
+
+    static final int DEFAULT_HOT_FRAMES = 64;
+
+    /** One frame of a sprite sheet, cropped to its opaque pixels. */
+    public static class Frame {
+        private final SpriteStore store;
+        private final BufferedImage compact;
+        private final int offsetX, offsetY;
+        private final int frameWidth, frameHeight;
+
+        Frame(SpriteStore store, BufferedImage compact, int offsetX, int offsetY, int frameWidth, int frameHeight) {
+            this.store = store;
+            this.compact = compact;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.frameWidth = frameWidth;
+            this.frameHeight = frameHeight;
+        }
+
+        /**
+         * @return the cropped frame for drawing (the compact image, or a cached TYPE_INT_ARGB_PRE copy if it is
+         * translucent).
+         */
+        public BufferedImage getImage() {
+            return compact.getTransparency() == Transparency.TRANSLUCENT ? store.hotImage(this) : compact;
+        }
+
+        /**
+         * @return the cropped frame in its compact (usually indexed-color) form.
+         */
+        public BufferedImage getCompactImage() {
+            return compact;
+        }
+
+        // Getters for the crop inside the full frame
+        public int getOffsetX() { return offsetX; }
+        public int getOffsetY() { return offsetY; }
+        public int getWidth() { return compact.getWidth(); }
+        public int getHeight() { return compact.getHeight(); }
+        public int getFrameWidth() { return frameWidth; }
+        public int getFrameHeight() { return frameHeight; }
+    }
+
+    // fields
+    private final Map<String, Frame[]> sheets = new HashMap<>();
+    private final LinkedHashMap<Frame, BufferedImage> hotFrames;
+    private long compactBytes, hotBytes;
+
+    /** Constructs an empty store.
+     *
+     * @param hotFrameCount the number of frames kept expanded for drawing.
+     */
+    public SpriteStore(int hotFrameCount) {
+        hotFrames = new LinkedHashMap<Frame, BufferedImage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Frame, BufferedImage> eldest) {
+                if (size() <= hotFrameCount) {
+                    return false;
+                }
+                hotBytes -= rasterBytes(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /** Loads the frames of a sprite sheet, laid out left to right. A sheet that was loaded before is not read again.
+     *
+     * @param fileName the sprite sheet.
+     * @param frameWidth the width of a frame in the sheet.
+     * @param frameHeight the height of a frame in the sheet.
+     * @param frameCount the number of frames in the sheet.
+     * @return the frames.
+     * @throws IOException if the sheet cannot be read.
+     */
+    public synchronized Frame[] load(String fileName, int frameWidth, int frameHeight, int frameCount) throws IOException {
+        Frame[] frames = sheets.get(fileName);
+        if (frames != null) {
+            return frames;
+        }
+        BufferedImage sheet = ImageIO.read(new File(fileName));
+        if (sheet == null) {
+            throw new IOException(fileName + " is not an image");
+        }
+        frames = new Frame[frameCount];
+        int[] pixels = new int[frameWidth * frameHeight];
+        for (int i = 0; i < frameCount; i++) {
+            sheet.getRGB(i * frameWidth, 0, frameWidth, frameHeight, pixels, 0, frameWidth);
+            frames[i] = crop(pixels, frameWidth, frameHeight);
+            compactBytes += rasterBytes(frames[i].compact);
+        }
+        sheets.put(fileName, frames);
+        return frames;
+    }
+
+    /**
+     * @return the bytes of pixel data of all frames in their compact form.
+     */
+    public synchronized long getCompactBytes() {
+        return compactBytes;
+    }
+
+    /**
+     * @return the bytes of pixel data of the hot frames.
+     */
+    public synchronized long getHotBytes() {
+        return hotBytes;
+    }
+
+    /** Crops a frame to its opaque pixels and stores it as compactly as its colors allow.
+     */
+    private Frame crop(int[] pixels, int frameWidth, int frameHeight) {
+        int left = frameWidth, top = frameHeight, right = -1, bottom = -1;
+        for (int y = 0; y < frameHeight; y++) {
+            for (int x = 0; x < frameWidth; x++) {
+                if ((pixels[y * frameWidth + x] >>> 24) != 0) {
+                    left = Math.min(left, x);
+                    right = Math.max(right, x);
+                    top = Math.min(top, y);
+                    bottom = Math.max(bottom, y);
+                }
+            }
+        }
+        if (right < 0) { // Fully transparent, keep a single transparent pixel
+            left = right = top = bottom = 0;
+        }
+        int width = right - left + 1;
+        int height = bottom - top + 1;
+
+        // Build the palette, all fully transparent pixels share entry 0
+        HashMap<Integer, Integer> palette = new HashMap<>();
+        palette.put(0, 0);
+        for (int y = top; y <= bottom && palette.size() <= 256; y++) {
+            for (int x = left; x <= right; x++) {
+                int argb = pixels[y * frameWidth + x];
+                palette.putIfAbsent((argb >>> 24) == 0 ? 0 : argb, palette.size());
+            }
+        }
+
+        BufferedImage compact;
+        if (palette.size() <= 256) {
+            byte[] r = new byte[palette.size()], g = new byte[palette.size()];
+            byte[] b = new byte[palette.size()], a = new byte[palette.size()];
+            for (Map.Entry<Integer, Integer> entry : palette.entrySet()) {
+                int argb = entry.getKey();
+                int index = entry.getValue();
+                a[index] = (byte) (argb >>> 24);
+                r[index] = (byte) (argb >>> 16);
+                g[index] = (byte) (argb >>> 8);
+                b[index] = (byte) argb;
+            }
+            IndexColorModel colors = new IndexColorModel(8, palette.size(), r, g, b, a);
+            compact = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colors);
+            byte[] indices = ((DataBufferByte) compact.getRaster().getDataBuffer()).getData();
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int argb = pixels[(top + y) * frameWidth + left + x];
+                    indices[y * width + x] = (byte) (int) palette.get((argb >>> 24) == 0 ? 0 : argb);
+                }
+            }
+        } else {
+            compact = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            compact.setRGB(0, 0, width, height, pixels, top * frameWidth + left, frameWidth);
+        }
+        return new Frame(this, compact, left, top, frameWidth, frameHeight);
+    }
+
+    /** Gets the expanded image of a frame, expanding it if it is not hot.
+     */
+    private synchronized BufferedImage hotImage(Frame frame) {
+        BufferedImage image = hotFrames.get(frame);
+        if (image == null) {
+            image = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g = image.createGraphics();
+            g.drawImage(frame.compact, 0, 0, null);
+            g.dispose();
+            hotBytes += rasterBytes(image);
+            hotFrames.put(frame, image);
+        }
+        return image;
+    }
+
+    /** Estimates the pixel data of an image: bytes per pixel times pixels, plus the palette.
+     */
+    private static long rasterBytes(BufferedImage image) {
+        long pixels = (long) image.getWidth() * image.getHeight();
+        if (image.getColorModel() instanceof IndexColorModel) {
+            return pixels + ((IndexColorModel) image.getColorModel()).getMapSize() * 4L;
+        }
+        return pixels * 4;
+    }
+}
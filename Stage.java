@@ -0,0 +1,318 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+
+/** Stage is the collision geometry of a stage: its bounds (the screen) and a list of boxes, loaded from a data file
+ * (see Stage.txt). Each box is one of:
+ * - floor: solid ground that is part of the background, so it is not drawn.
+ * - wall: solid on every side.
+ * - platform: can be stood on, but jumped through from below and walked through from the sides.
+ * - hazard: not solid, hurts the fighters touching it.
+ *
+ * Coordinates are in fixed-point sub-pixel units (see FixedPhysics). The boxes are indexed in a uniform grid of
+ * CELL_SIZE cells, built once when the stage is loaded and stored flat: the boxes touching cell c are
+ * cellBoxes[cellStart[c]] up to cellBoxes[cellStart[c + 1]]. A query only visits the cells its area covers, so its
+ * cost depends on how crowded the stage is around a fighter, not on how many boxes the whole stage has. A box in
+ * several cells may be visited more than once, which the queries do not mind because they only take a minimum or a
+ * maximum. Queries allocate nothing and change nothing, so all games (and the AI's simulations) share one stage.
+ */
+public final class Stage {
+
+    static final int KIND_FLOOR = 0;
+    static final int KIND_WALL = 1;
+    static final int KIND_PLATFORM = 2;
+    static final int KIND_HAZARD = 3;
+    static final int NONE = Integer.MIN_VALUE; // Returned by the queries when nothing is in the way
+    static final int CELL_SIZE = FixedPhysics.toFixed(64);
+    private static final String[] KIND_NAMES = {"floor", "wall", "platform", "hazard"};
+
+    // Query modes
+    private static final int LANDING = 0;
+    private static final int CEILING = 1;
+    private static final int WALL_RIGHT = 2;
+    private static final int WALL_LEFT = 3;
+    private static final int HAZARD = 4;
+
+    // fields
+    private final int boundsLeft, boundsTop, boundsRight, boundsBottom;
+    private final int count;
+    private final int[] kinds, lefts, tops, rights, bottoms, damages;
+    private final int columns, rows;
+    private final int[] cellStart;
+    private final int[] cellBoxes;
+
+    /** Constructs a stage and builds its index. The arrays may be longer than count.
+     */
+    private Stage(int[] bounds, int count, int[] kinds, int[] lefts, int[] tops, int[] rights, int[] bottoms,
+            int[] damages) {
+        this.boundsLeft = bounds[0];
+        this.boundsTop = bounds[1];
+        this.boundsRight = bounds[2];
+        this.boundsBottom = bounds[3];
+        this.count = count;
+        this.kinds = Arrays.copyOf(kinds, count);
+        this.lefts = Arrays.copyOf(lefts, count);
+        this.tops = Arrays.copyOf(tops, count);
+        this.rights = Arrays.copyOf(rights, count);
+        this.bottoms = Arrays.copyOf(bottoms, count);
+        this.damages = Arrays.copyOf(damages, count);
+
+        columns = Math.max(1, (boundsRight - boundsLeft + CELL_SIZE - 1) / CELL_SIZE);
+        rows = Math.max(1, (boundsBottom - boundsTop + CELL_SIZE - 1) / CELL_SIZE);
+        int cells = columns * rows;
+
+        // Count the boxes per cell, turn the counts into start offsets, then fill in the boxes
+        cellStart = new int[cells + 1];
+        for (int i = 0; i < count; i++) {
+            for (int row = row(this.tops[i]); row <= row(this.bottoms[i]); row++) {
+                for (int column = column(this.lefts[i]); column <= column(this.rights[i]); column++) {
+                    cellStart[row * columns + column + 1]++;
+                }
+            }
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        cellBoxes = new int[cellStart[cells]];
+        int[] next = Arrays.copyOf(cellStart, cells);
+        for (int i = 0; i < count; i++) {
+            for (int row = row(this.tops[i]); row <= row(this.bottoms[i]); row++) {
+                for (int column = column(this.lefts[i]); column <= column(this.rights[i]); column++) {
+                    cellBoxes[next[row * columns + column]++] = i;
+                }
+            }
+        }
+    }
+
+    /** Loads a stage from its data file. Each line is "kind left top right bottom", in screen pixels, with the
+     * damage at the end for hazards; "bounds left top right bottom" sets the bounds (default the 800x600 screen).
+     * Empty lines and lines starting with # are skipped, invalid lines are reported and skipped. If the file cannot
+     * be read, the stage is a flat floor at FixedPhysics.GROUND_LEVEL.
+     *
+     * @param fileName the stage file.
+     * @return the stage.
+     */
+    public static Stage load(String fileName) {
+        try {
+            return parse(Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8), fileName);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return flat();
+        }
+    }
+
+    /** Builds a stage from the lines of a stage file (see load).
+     *
+     * @param lines the lines.
+     * @param name the name of the stage for error messages.
+     * @return the stage.
+     */
+    static Stage parse(List<String> lines, String name) {
+        int[] bounds = {0, 0, FixedPhysics.toFixed(800), FixedPhysics.toFixed(600)};
+        int capacity = Math.max(1, lines.size());
+        int[] kinds = new int[capacity], lefts = new int[capacity], tops = new int[capacity];
+        int[] rights = new int[capacity], bottoms = new int[capacity], damages = new int[capacity];
+        int count = 0;
+        for (int lineNumber = 1; lineNumber <= lines.size(); lineNumber++) {
+            String line = lines.get(lineNumber - 1).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            int kind = Arrays.asList(KIND_NAMES).indexOf(words[0]);
+            boolean isBounds = words[0].equals("bounds");
+            int expected = kind == KIND_HAZARD ? 6 : 5;
+            int[] values = new int[words.length - 1];
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = Integer.parseInt(words[i + 1]);
+                }
+            } catch (NumberFormatException e) {
+                values = null;
+            }
+            if ((kind < 0 && !isBounds) || words.length != expected || values == null
+                    || values[0] >= values[2] || values[1] >= values[3]) {
+                System.out.println(name + " line " + lineNumber + " is not a valid box, ignoring it: " + line);
+                continue;
+            }
+            if (isBounds) {
+                for (int i = 0; i < 4; i++) {
+                    bounds[i] = FixedPhysics.toFixed(values[i]);
+                }
+                continue;
+            }
+            kinds[count] = kind;
+            lefts[count] = FixedPhysics.toFixed(values[0]);
+            tops[count] = FixedPhysics.toFixed(values[1]);
+            rights[count] = FixedPhysics.toFixed(values[2]);
+            bottoms[count] = FixedPhysics.toFixed(values[3]);
+            damages[count] = kind == KIND_HAZARD ? values[4] : 0;
+            count++;
+        }
+        return new Stage(bounds, count, kinds, lefts, tops, rights, bottoms, damages);
+    }
+
+    /** Creates the stage the game had before stages: a floor at the ground level and nothing else.
+     *
+     * @return the stage.
+     */
+    static Stage flat() {
+        int[] bounds = {0, 0, FixedPhysics.toFixed(800), FixedPhysics.toFixed(600)};
+        int floor = FixedPhysics.GROUND_LEVEL + FixedPhysics.FEET;
+        return new Stage(bounds, 1, new int[] {KIND_FLOOR}, new int[] {bounds[0]}, new int[] {floor},
+                new int[] {bounds[2]}, new int[] {bounds[3]}, new int[] {0});
+    }
+
+    /** Finds where a falling body lands: the highest top of a floor, wall or platform under it that its feet reach
+     * or pass this tick.
+     *
+     * @param left the left of the body.
+     * @param right the right of the body.
+     * @param fromFeet the feet before the move.
+     * @param toFeet the feet after the move (at least fromFeet).
+     * @return the top to land on, or NONE.
+     */
+    public int landingTop(int left, int right, int fromFeet, int toFeet) {
+        return scan(LANDING, left, fromFeet, right, toFeet);
+    }
+
+    /** Finds where a rising body hits its head: the lowest bottom of a floor or wall above it that its top reaches
+     * or passes this tick. Platforms are jumped through.
+     *
+     * @param left the left of the body.
+     * @param right the right of the body.
+     * @param fromTop the top of the body before the move.
+     * @param toTop the top after the move (at most fromTop).
+     * @return the bottom to stop at, or NONE.
+     */
+    public int ceilingBottom(int left, int right, int fromTop, int toTop) {
+        return scan(CEILING, left, toTop, right, fromTop);
+    }
+
+    /** Finds the first wall or floor a body moving right runs into.
+     *
+     * @param top the top of the body.
+     * @param bottom the feet of the body.
+     * @param fromRight the right of the body before the move.
+     * @param toRight the right after the move.
+     * @return the left of the wall to stop at, or NONE.
+     */
+    public int wallRight(int top, int bottom, int fromRight, int toRight) {
+        return scan(WALL_RIGHT, fromRight, top, toRight, bottom);
+    }
+
+    /** Finds the first wall or floor a body moving left runs into.
+     *
+     * @param top the top of the body.
+     * @param bottom the feet of the body.
+     * @param fromLeft the left of the body before the move.
+     * @param toLeft the left after the move.
+     * @return the right of the wall to stop at, or NONE.
+     */
+    public int wallLeft(int top, int bottom, int fromLeft, int toLeft) {
+        return scan(WALL_LEFT, toLeft, top, fromLeft, bottom);
+    }
+
+    /** Finds the hazards a body touches.
+     *
+     * @param left the left of the body.
+     * @param top the top of the body.
+     * @param right the right of the body.
+     * @param bottom the feet of the body.
+     * @return the highest damage of the hazards touched, or 0.
+     */
+    public int hazardDamage(int left, int top, int right, int bottom) {
+        return Math.max(0, scan(HAZARD, left, top, right, bottom));
+    }
+
+    /** Visits the boxes in the cells covering an area and combines the ones that matter for a query: the minimum
+     * (LANDING, WALL_RIGHT) or maximum (CEILING, WALL_LEFT, HAZARD) of their relevant edge or damage.
+     */
+    private int scan(int mode, int areaLeft, int areaTop, int areaRight, int areaBottom) {
+        boolean minimum = mode == LANDING || mode == WALL_RIGHT;
+        int result = minimum ? Integer.MAX_VALUE : NONE;
+        int lastRow = row(areaBottom);
+        int firstColumn = column(areaLeft);
+        int lastColumn = column(areaRight);
+        for (int row = row(areaTop); row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns + column;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int box = cellBoxes[i];
+                    int kind = kinds[box];
+                    switch (mode) {
+                        case LANDING: // Its top is within the fall, under the body
+                            if (kind != KIND_HAZARD && tops[box] >= areaTop && tops[box] <= areaBottom
+                                    && lefts[box] < areaRight && rights[box] > areaLeft) {
+                                result = Math.min(result, tops[box]);
+                            }
+                            break;
+                        case CEILING: // Its bottom is within the rise, over the body
+                            if ((kind == KIND_FLOOR || kind == KIND_WALL) && bottoms[box] >= areaTop
+                                    && bottoms[box] <= areaBottom && lefts[box] < areaRight && rights[box] > areaLeft) {
+                                result = Math.max(result, bottoms[box]);
+                            }
+                            break;
+                        case WALL_RIGHT: // Its left side is within the move, beside the body
+                            if ((kind == KIND_FLOOR || kind == KIND_WALL) && lefts[box] >= areaLeft
+                                    && lefts[box] < areaRight && tops[box] < areaBottom && bottoms[box] > areaTop) {
+                                result = Math.min(result, lefts[box]);
+                            }
+                            break;
+                        case WALL_LEFT: // Its right side is within the move, beside the body
+                            if ((kind == KIND_FLOOR || kind == KIND_WALL) && rights[box] <= areaRight
+                                    && rights[box] > areaLeft && tops[box] < areaBottom && bottoms[box] > areaTop) {
+                                result = Math.max(result, rights[box]);
+                            }
+                            break;
+                        default: // HAZARD, overlapping the body
+                            if (kind == KIND_HAZARD && lefts[box] < areaRight && rights[box] > areaLeft
+                                    && tops[box] < areaBottom && bottoms[box] > areaTop) {
+                                result = Math.max(result, damages[box]);
+                            }
+                            break;
+                    }
+                }
+            }
+        }
+        return result == Integer.MAX_VALUE ? NONE : result;
+    }
+
+    /** The column of the grid containing an x-coordinate, clamped to the grid.
+     */
+    private int column(int x) {
+        return Math.max(0, Math.min(columns - 1, Math.floorDiv(x - boundsLeft, CELL_SIZE)));
+    }
+
+    /** The row of the grid containing a y-coordinate, clamped to the grid.
+     */
+    private int row(int y) {
+        return Math.max(0, Math.min(rows - 1, Math.floorDiv(y - boundsTop, CELL_SIZE)));
+    }
+
+    // Getters for the bounds
+    public int getLeft() { return boundsLeft; }
+    public int getTop() { return boundsTop; }
+    public int getRight() { return boundsRight; }
+    public int getBottom() { return boundsBottom; }
+
+    // Getters for the boxes, e.g. for drawing them
+    public int getBoxCount() { return count; }
+    public int getKind(int box) { return kinds[box]; }
+    public int getLeft(int box) { return lefts[box]; }
+    public int getTop(int box) { return tops[box]; }
+    public int getRight(int box) { return rights[box]; }
+    public int getBottom(int box) { return bottoms[box]; }
+    public int getDamage(int box) { return damages[box]; }
+
+    /**
+     * @return the number of entries in the grid index (boxes counted once per cell they touch).
+     */
+    public int getIndexSize() {
+        return cellBoxes.length;
+    }
+}
@@ -0,0 +1,129 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+
+/** StageBenchmark measures the collision queries of Stage on generated stages of growing size but the same density
+ * (one platform or wall per 160 x 160 px on average), the way a big scrolling stage would grow. Each query is a
+ * fighter's body falling and running one tick somewhere on the stage, as GameLogic asks it every tick. The grid
+ * index is compared with a linear scan over all the boxes, which is what the stage would cost without the index.
+ *
+ * Run with: java StageBenchmark [largest box count]
+ * The grid's time per query should stay about the same for every size, the linear scan's grows with the box count.
+ * Both have to give the same checksum.
+ */
+public class StageBenchmark {
+
+    private static final int SPACING = 160;  // Average pixels between boxes, in both directions
+    private static final int QUERIES = 200_000;
+    private static final int LINEAR_WORK = 50_000_000; // Boxes the linear scan may visit per round
+
+    /** Runs the benchmark.
+     * @param args optionally the largest number of boxes.
+     */
+    public static void main(String[] args) {
+        int largest = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        for (int boxes = 10; boxes <= largest; boxes *= 10) {
+            Stage stage = generate(boxes, new SplittableRandom(boxes));
+            int[] queries = queries(stage, QUERIES, new SplittableRandom(~boxes));
+            int linearQueries = Math.max(100, Math.min(QUERIES, LINEAR_WORK / boxes));
+
+            double gridNanos = 0, linearNanos = 0;
+            long gridChecksum = 0, linearChecksum = 0;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                runGrid(stage, queries, QUERIES);
+                gridNanos = (double) (System.nanoTime() - start) / QUERIES;
+                gridChecksum = runGrid(stage, queries, linearQueries);
+
+                start = System.nanoTime();
+                linearChecksum = runLinear(stage, queries, linearQueries);
+                linearNanos = (double) (System.nanoTime() - start) / linearQueries;
+            }
+            System.out.printf("%7d boxes (%d cell entries): grid %.1f ns/query, linear scan %.1f ns/query, "
+                    + "checksums %s%n", boxes, stage.getIndexSize(), gridNanos, linearNanos,
+                    gridChecksum == linearChecksum ? "equal" : "DIFFER " + gridChecksum + " / " + linearChecksum);
+        }
+    }
+
+    /** Generates a square stage with a floor along the bottom and the given number of platforms and walls
+     * scattered over it.
+     */
+    private static Stage generate(int boxes, SplittableRandom random) {
+        int side = (int) Math.ceil(Math.sqrt(boxes)) * SPACING;
+        List<String> lines = new ArrayList<>();
+        lines.add("bounds 0 0 " + side + " " + (side + 100));
+        lines.add("floor 0 " + side + " " + side + " " + (side + 100));
+        for (int i = 1; i < boxes; i++) {
+            int x = random.nextInt(side - 200);
+            int y = random.nextInt(side - 200);
+            if (random.nextInt(4) == 0) {
+                lines.add("wall " + x + " " + y + " " + (x + 20) + " " + (y + 120));
+            } else {
+                lines.add("platform " + x + " " + y + " " + (x + 40 + random.nextInt(160)) + " " + (y + 12));
+            }
+        }
+        return Stage.parse(lines, "generated stage");
+    }
+
+    /** Generates random body positions (left, feet) on the stage, two ints per query.
+     */
+    private static int[] queries(Stage stage, int count, SplittableRandom random) {
+        int width = FixedPhysics.toPixels(stage.getRight()) - 120;
+        int height = FixedPhysics.toPixels(stage.getBottom()) - 156;
+        int[] queries = new int[count * 2];
+        for (int i = 0; i < count; i++) {
+            queries[2 * i] = FixedPhysics.toFixed(random.nextInt(width));
+            queries[2 * i + 1] = FixedPhysics.toFixed(156 + random.nextInt(height));
+        }
+        return queries;
+    }
+
+    /** Falls and runs right one tick at each query position, using the index.
+     */
+    private static long runGrid(Stage stage, int[] queries, int count) {
+        int width = FixedPhysics.BODY_RIGHT - FixedPhysics.BODY_LEFT;
+        int height = FixedPhysics.FEET - FixedPhysics.BODY_TOP;
+        long checksum = 0;
+        for (int i = 0; i < count; i++) {
+            int left = queries[2 * i], feet = queries[2 * i + 1];
+            checksum = checksum * 31 + stage.landingTop(left, left + width, feet, feet + FixedPhysics.JUMP_SPEED);
+            checksum = checksum * 31 + stage.wallRight(feet - height, feet, left + width,
+                    left + width + FixedPhysics.RUN_SPEED);
+        }
+        return checksum;
+    }
+
+    /** The same queries as runGrid, checking every box of the stage.
+     */
+    private static long runLinear(Stage stage, int[] queries, int count) {
+        int width = FixedPhysics.BODY_RIGHT - FixedPhysics.BODY_LEFT;
+        int height = FixedPhysics.FEET - FixedPhysics.BODY_TOP;
+        int boxes = stage.getBoxCount();
+        long checksum = 0;
+        for (int i = 0; i < count; i++) {
+            int left = queries[2 * i], feet = queries[2 * i + 1];
+            int right = left + width, top = feet - height;
+            int toFeet = feet + FixedPhysics.JUMP_SPEED, toRight = right + FixedPhysics.RUN_SPEED;
+            int landing = Integer.MAX_VALUE, wall = Integer.MAX_VALUE;
+            for (int box = 0; box < boxes; box++) {
+                int kind = stage.getKind(box);
+                if (kind == Stage.KIND_HAZARD) {
+                    continue;
+                }
+                int boxLeft = stage.getLeft(box), boxTop = stage.getTop(box);
+                int boxRight = stage.getRight(box), boxBottom = stage.getBottom(box);
+                if (boxTop >= feet && boxTop <= toFeet && boxLeft < right && boxRight > left) {
+                    landing = Math.min(landing, boxTop);
+                }
+                if (kind != Stage.KIND_PLATFORM && boxLeft >= right && boxLeft < toRight
+                        && boxTop < feet && boxBottom > top) {
+                    wall = Math.min(wall, boxLeft);
+                }
+            }
+            checksum = checksum * 31 + (landing == Integer.MAX_VALUE ? Stage.NONE : landing);
+            checksum = checksum * 31 + (wall == Integer.MAX_VALUE ? Stage.NONE : wall);
+        }
+        return checksum;
+    }
+}
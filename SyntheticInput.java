@@ -0,0 +1,86 @@
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.util.SplittableRandom;
+import javax.swing.SwingUtilities;
+
+
+/** SyntheticInput plays a scripted (but seeded-random) sequence of player 1 moves, jumps and attacks into a
+ * CombatGame, so the input-to-display latency can be measured without a human at the keyboard.
+ * The key events are delivered on the EDT to the game's key listeners, exactly where real key events arrive.
+ * When the run is over the latency report is printed and the program exits.
+ */
+public class SyntheticInput {
+
+    // fields
+    private final CombatGame game;
+    private final SplittableRandom random;
+
+    /** Constructs a synthetic input source.
+     *
+     * @param game the game to send the key events to.
+     * @param seed the seed of the script, the same seed always gives the same sequence.
+     */
+    public SyntheticInput(CombatGame game, long seed) {
+        this.game = game;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /** Starts playing the script on a background thread.
+     *
+     * @param seconds how long to play before printing the report and exiting.
+     */
+    public void start(int seconds) {
+        Thread thread = new Thread(() -> run(seconds * 1000L), "synthetic-input");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run(long millis) {
+        long end = System.currentTimeMillis() + millis;
+        try {
+            while (System.currentTimeMillis() < end) {
+                switch (random.nextInt(3)) {
+                    case 0: // Run for a while
+                        int key = random.nextBoolean() ? KeyEvent.VK_D : KeyEvent.VK_A;
+                        tap(key, 150 + random.nextInt(250));
+                        break;
+                    case 1:
+                        tap(KeyEvent.VK_W, 50);
+                        break;
+                    default:
+                        tap(KeyEvent.VK_S, 40);
+                        break;
+                }
+                Thread.sleep(100 + random.nextInt(200));
+            }
+        } catch (InterruptedException e) {
+            return;
+        }
+        System.out.print(game.getLatencyTracer().report());
+        TickProfiler profiler = game.getProfiler();
+        System.out.printf("fps %.1f, ticks/s %.1f, late ticks %d, skipped ticks %d%n", profiler.getFramesPerSecond(),
+                profiler.getTicksPerSecond(), profiler.getLateTicks(), profiler.getMissedTicks());
+        System.exit(0);
+    }
+
+    /** Presses a key, holds it, and releases it.
+     */
+    private void tap(int keyCode, long holdMillis) throws InterruptedException {
+        send(KeyEvent.KEY_PRESSED, keyCode);
+        Thread.sleep(holdMillis);
+        send(KeyEvent.KEY_RELEASED, keyCode);
+    }
+
+    private void send(int id, int keyCode) {
+        SwingUtilities.invokeLater(() -> {
+            KeyEvent event = new KeyEvent(game, id, System.currentTimeMillis(), 0, keyCode, KeyEvent.CHAR_UNDEFINED);
+            for (KeyListener listener : game.getKeyListeners()) {
+                if (id == KeyEvent.KEY_PRESSED) {
+                    listener.keyPressed(event);
+                } else {
+                    listener.keyReleased(event);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,239 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/** TickProfiler collects timing data for each phase of GameLogic.onGameTick and for GamePainter.
+ * Besides the latency histograms it keeps track of late and skipped ticks, the effective FPS and tick rate,
+ * and how much time the garbage collector spent during the last second, so a stutter can be attributed
+ * to logic, painting or GC. The numbers are shown in the debug overlay (F3) and exposed over JMX.
+ *
+ * Tick phases are recorded from the thread running the game logic, paints from the thread painting the game.
+ */
+public class TickProfiler implements TickProfilerMBean {
+
+    // Phases, in the order they run during a tick
+    static final int PHASE_PHYSICS = 0;
+    static final int PHASE_POSITIONS = 1;
+    static final int PHASE_ATTACKS = 2;
+    static final int PHASE_HAZARDS = 3;
+    static final int PHASE_FRAMES = 4;
+    static final int PHASE_GAME_OVER = 5;
+    static final int PHASE_PARTICLES = 6;
+    static final int PHASE_TICK = 7;
+    static final int PHASE_PAINT = 8;
+    static final String[] PHASE_NAMES = {"physics", "positions", "attacks", "hazards", "frames", "gameover",
+        "particles", "tick", "paint"};
+
+    private static final long ONE_SECOND = 1_000_000_000L;
+
+    // fields
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASE_NAMES.length];
+    private final long tickPeriodNanos;
+    private volatile boolean resetTicks, resetPaints;
+
+    private long tickCount, lateTicks, missedTicks;
+    private long ticksInWindow, tickWindowStart;
+    private volatile double ticksPerSecond;
+
+    private long framesInWindow, frameWindowStart;
+    private volatile double framesPerSecond;
+    private long lastGcMillis = -1;
+    private volatile long gcMillisLastSecond;
+
+    /** Constructs a profiler for a game loop that is expected to tick at a fixed period.
+     *
+     * @param tickPeriodNanos the time between two ticks in nanoseconds.
+     */
+    public TickProfiler(long tickPeriodNanos) {
+        this.tickPeriodNanos = tickPeriodNanos;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /** Registers the profiler with the platform MBean server, so it can be inspected with e.g. JConsole.
+     *
+     * @param name the name used in the ObjectName (CombatGame:type=TickProfiler,name=...).
+     */
+    public void register(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("CombatGame:type=TickProfiler,name=" + ObjectName.quote(name));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(this, objectName);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Called when a tick starts. Counts the tick as late if it started more than half a period after it was
+     * scheduled, and updates the tick rate.
+     *
+     * @param now the current System.nanoTime().
+     * @param scheduled the System.nanoTime() the tick was scheduled for.
+     */
+    public void tickStarted(long now, long scheduled) {
+        if (resetTicks) {
+            resetTickData();
+        }
+        if (now - scheduled > tickPeriodNanos / 2) {
+            lateTicks++;
+        }
+        tickCount++;
+
+        ticksInWindow++;
+        if (tickWindowStart == 0) {
+            tickWindowStart = now;
+        } else if (now - tickWindowStart >= ONE_SECOND) {
+            ticksPerSecond = ticksInWindow * (double) ONE_SECOND / (now - tickWindowStart);
+            ticksInWindow = 0;
+            tickWindowStart = now;
+        }
+    }
+
+    /** Called when the game loop gave up catching up and skipped ticks.
+     *
+     * @param ticks the number of ticks that were never run.
+     */
+    public void ticksSkipped(long ticks) {
+        missedTicks += ticks;
+    }
+
+    /** Records the duration of one tick phase.
+     *
+     * @param phase one of the PHASE_ constants (except PHASE_PAINT).
+     * @param nanos the duration in nanoseconds.
+     */
+    public void recordPhase(int phase, long nanos) {
+        histograms[phase].record(nanos);
+    }
+
+    /** Records one painted frame, its duration and updates the FPS and GC statistics.
+     *
+     * @param start the System.nanoTime() when painting started.
+     * @param end the System.nanoTime() when painting finished.
+     */
+    public void recordPaint(long start, long end) {
+        if (resetPaints) {
+            resetPaints = false;
+            histograms[PHASE_PAINT].reset();
+        }
+        histograms[PHASE_PAINT].record(end - start);
+
+        framesInWindow++;
+        if (frameWindowStart == 0) {
+            frameWindowStart = end;
+        } else if (end - frameWindowStart >= ONE_SECOND) {
+            framesPerSecond = framesInWindow * (double) ONE_SECOND / (end - frameWindowStart);
+            framesInWindow = 0;
+            frameWindowStart = end;
+            sampleGc();
+        }
+    }
+
+    /** Sums up the collection time of all garbage collectors and keeps the difference to the last sample.
+     */
+    private void sampleGc() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        if (lastGcMillis >= 0) {
+            gcMillisLastSecond = total - lastGcMillis;
+        }
+        lastGcMillis = total;
+    }
+
+    private void resetTickData() {
+        resetTicks = false;
+        for (int i = 0; i < PHASE_PAINT; i++) {
+            histograms[i].reset();
+        }
+        tickCount = 0;
+        lateTicks = 0;
+        missedTicks = 0;
+    }
+
+    /** Gets the histogram of a phase.
+     *
+     * @param phase one of the PHASE_ constants.
+     * @return the histogram for that phase.
+     */
+    public LatencyHistogram getHistogram(int phase) {
+        return histograms[phase];
+    }
+
+    /** Formats one phase for the overlay and JMX, e.g. "physics    n=300 mean=4.1 p50=3.9 p99=12.0 max=40.2".
+     *
+     * @param phase one of the PHASE_ constants.
+     * @return the formatted summary (times in microseconds).
+     */
+    public String summarize(int phase) {
+        LatencyHistogram h = histograms[phase];
+        return String.format("%-10s n=%d mean=%.1f p50=%.1f p99=%.1f max=%.1f", PHASE_NAMES[phase], h.getCount(),
+                h.getMeanNanos() / 1000.0, h.getValueAtPercentile(50) / 1000.0,
+                h.getValueAtPercentile(99) / 1000.0, h.getMaxNanos() / 1000.0);
+    }
+
+    @Override
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    @Override
+    public long getLateTicks() {
+        return lateTicks;
+    }
+
+    @Override
+    public long getMissedTicks() {
+        return missedTicks;
+    }
+
+    @Override
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    @Override
+    public double getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    @Override
+    public long getGcMillisLastSecond() {
+        return gcMillisLastSecond;
+    }
+
+    @Override
+    public String[] getPhaseSummaries() {
+        String[] summaries = new String[PHASE_NAMES.length];
+        for (int i = 0; i < summaries.length; i++) {
+            summaries[i] = summarize(i);
+        }
+        return summaries;
+    }
+
+    @Override
+    public double getPercentileMicros(String phase, double percentile) {
+        for (int i = 0; i < PHASE_NAMES.length; i++) {
+            if (PHASE_NAMES[i].equalsIgnoreCase(phase)) {
+                return histograms[i].getValueAtPercentile(percentile) / 1000.0;
+            }
+        }
+        return -1;
+    }
+
+    /** Asks the recording threads to clear their histograms on their next tick/paint,
+     * so the histograms are never cleared while being written.
+     */
+    @Override
+    public void reset() {
+        resetTicks = true;
+        resetPaints = true;
+    }
+}
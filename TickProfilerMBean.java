@@ -0,0 +1,52 @@
+/** The JMX management interface of the TickProfiler. Every attribute is read-only, the only operations
+ * are a percentile lookup for a single phase and a reset of all histograms.
+ */
+public interface TickProfilerMBean {
+
+    /**
+     * @return the number of game ticks seen so far.
+     */
+    long getTickCount();
+
+    /**
+     * @return the number of ticks that started more than half a period later than scheduled.
+     */
+    long getLateTicks();
+
+    /**
+     * @return the number of ticks the game loop skipped because it was too far behind to catch up.
+     */
+    long getMissedTicks();
+
+    /**
+     * @return the frames painted during the last full second.
+     */
+    double getFramesPerSecond();
+
+    /**
+     * @return the ticks run during the last full second.
+     */
+    double getTicksPerSecond();
+
+    /**
+     * @return the milliseconds all garbage collectors spent during the last full second.
+     */
+    long getGcMillisLastSecond();
+
+    /**
+     * @return one line per phase with count, mean, p50, p99 and max (in microseconds).
+     */
+    String[] getPhaseSummaries();
+
+    /** Looks up a percentile of a single phase.
+     *
+     * @param phase the phase name (e.g. "physics" or "paint").
+     * @param percentile the percentile, between 0 and 100.
+     * @return the value in microseconds, or -1 if the phase does not exist.
+     */
+    double getPercentileMicros(String phase, double percentile);
+
+    /** Clears all histograms and counters.
+     */
+    void reset();
+}
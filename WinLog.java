@@ -0,0 +1,564 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+
+/** WinLog is the log of match results (e.g. "Player 1 Wins!"), one per line. New results are appended to the active
+ * segment, a plain text file (Wins.txt). When the active segment grows past a size or age limit it is sealed: its
+ * lines are deflate-compressed into a numbered segment file (Wins-000001.seg, ...) that ends with a footer holding
+ * the number of wins of every player in it, and the active segment starts over empty.
+ *
+ * Win counts are summed from the footers (only the footer of each sealed segment is read) plus the lines of the
+ * small active segment, and kept up to date as results are appended, so nothing old is rescanned. Queries that
+ * need every result in order (e.g. streaks) stream-decompress the sealed segments one at a time.
+ *
+ * Sealing only renames the active segment to a numbered ".sealing" file; it is compressed on a background thread,
+ * so appending a result never waits for it. Until then queries read the ".sealing" file as it is. The background
+ * thread also compacts the segments in tiers: whenever the newest MERGE_COUNT segments are in the same size tier
+ * (a tier holds MERGE_COUNT times more results than the one below), they are merged into one segment of the next tier, so
+ * each result is only rewritten a few times however long the log grows.
+ *
+ * Sealing and compaction are crash-safe: a ".sealing" file is finished on the next start unless its segment
+ * already exists, and every segment records the range of segment numbers it covers, so segments left behind by an
+ * interrupted compaction are recognized and deleted. A segment that cannot be read is renamed to ".bad" and skipped,
+ * and new segments are numbered after the highest number of any segment file on disk, so an existing segment is
+ * never overwritten.
+ */
+public class WinLog {
+
+    static final long DEFAULT_MAX_BYTES = 64 * 1024;
+    static final long DEFAULT_MAX_AGE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    static final int MERGE_COUNT = 4;
+
+    private static final int MAGIC = 0x57494E53; // "WINS"
+    private static final Pattern RESULT = Pattern.compile("Player (.+) Wins!");
+
+    /** A sealed segment, as described by its footer. */
+    private static class Segment {
+        File file;
+        int firstNumber, lastNumber;
+        long startMillis, endMillis;
+        int results;
+        Map<String, Integer> wins = new HashMap<>();
+        File sealing; // The .sealing file holding the results until the segment is written, then null
+    }
+
+    // fields
+    private final File activeFile;
+    private final File directory;
+    private final String baseName;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<String, Integer> sealedWins = new HashMap<>();
+    private final Map<String, Integer> activeWins = new HashMap<>();
+    private int sealedResults, activeResults;
+    private long activeStartMillis;
+    private int highestNumber; // The highest segment number used by any file on disk
+    private final ExecutorService sealer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "winlog-sealer");
+        thread.setDaemon(true); // An unfinished .sealing file is finished on the next start
+        return thread;
+    });
+
+    /** Opens the log with the default limits (64 KB or 30 days per segment).
+     *
+     * @param activeFile the active segment, e.g. "Wins.txt". Sealed segments are stored next to it.
+     */
+    public WinLog(String activeFile) {
+        this(activeFile, DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE_MILLIS);
+    }
+
+    /** Opens the log: reads the footers of the sealed segments and scans the active segment.
+     *
+     * @param activeFile the active segment, e.g. "Wins.txt". Sealed segments are stored next to it.
+     * @param maxBytes the size at which the active segment is sealed.
+     * @param maxAgeMillis the age at which the active segment is sealed.
+     */
+    public WinLog(String activeFile, long maxBytes, long maxAgeMillis) {
+        this.activeFile = new File(activeFile).getAbsoluteFile();
+        this.directory = this.activeFile.getParentFile();
+        String name = this.activeFile.getName();
+        this.baseName = name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+
+        try {
+            loadSegments();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        try {
+            scanActive();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Appends a result, sealing the active segment first if it is too big or too old (the segment is written
+     * in the background).
+     *
+     * @param message the result, e.g. "Player 1 Wins!".
+     */
+    public synchronized void append(String message) {
+        try {
+            long now = System.currentTimeMillis();
+            if (activeResults > 0 && (activeFile.length() >= maxBytes || now - activeStartMillis >= maxAgeMillis)) {
+                seal();
+            }
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(activeFile, true))) {
+                writer.write(message);
+                writer.newLine();
+            }
+            if (activeResults == 0) {
+                activeStartMillis = now;
+            }
+            activeResults++;
+            count(activeWins, message);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Gets the number of wins of a player, from the footers and the active segment (no decompression).
+     *
+     * @param player the player as written in the results, e.g. "1" for "Player 1 Wins!".
+     * @return the number of wins.
+     */
+    public synchronized int getWins(String player) {
+        return sealedWins.getOrDefault(player, 0) + activeWins.getOrDefault(player, 0);
+    }
+
+    /**
+     * @return the number of results in the log.
+     */
+    public synchronized int getResultCount() {
+        return sealedResults + activeResults;
+    }
+
+    /**
+     * @return the number of sealed segments.
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /** Streams every result in the log, oldest first, decompressing one sealed segment at a time.
+     *
+     * @param consumer receives each result line.
+     */
+    public synchronized void forEachResult(Consumer<String> consumer) {
+        try {
+            for (Segment segment : segments) {
+                try (InputStream in = segment.sealing != null ? new FileInputStream(segment.sealing) : open(segment)) {
+                    readLines(in, consumer);
+                }
+            }
+            if (activeFile.exists()) {
+                try (InputStream in = new FileInputStream(activeFile)) {
+                    readLines(in, consumer);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Finds the longest run of consecutive wins of each player. A detailed query: it streams the whole log.
+     *
+     * @return the longest streak of each player, by player.
+     */
+    public Map<String, Integer> longestStreaks() {
+        Map<String, Integer> longest = new HashMap<>();
+        String[] last = {null};
+        int[] streak = {0};
+        forEachResult(line -> {
+            String player = playerOf(line);
+            streak[0] = player.equals(last[0]) ? streak[0] + 1 : 1;
+            last[0] = player;
+            longest.merge(player, streak[0], Math::max);
+        });
+        return longest;
+    }
+
+    /** Seals the active segment now (if it has any results): renames it to a ".sealing" file and leaves the
+     * compression (and compaction) to the background thread.
+     */
+    public synchronized void seal() throws IOException {
+        if (activeResults == 0) {
+            return;
+        }
+        Segment segment = new Segment();
+        segment.firstNumber = ++highestNumber;
+        segment.lastNumber = segment.firstNumber;
+        segment.startMillis = activeStartMillis;
+        segment.endMillis = System.currentTimeMillis();
+        segment.file = segmentFile(segment.firstNumber, segment.lastNumber);
+        segment.sealing = sealingFile(segment.firstNumber);
+        Files.move(activeFile.toPath(), segment.sealing.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        segments.add(segment);
+        sealedResults += activeResults;
+        for (Map.Entry<String, Integer> entry : activeWins.entrySet()) {
+            sealedWins.merge(entry.getKey(), entry.getValue(), Integer::sum);
+        }
+        activeWins.clear();
+        activeResults = 0;
+        sealer.execute(() -> {
+            try {
+                writeSegment(segment, consumer -> {
+                    try (InputStream in = new FileInputStream(segment.sealing)) {
+                        readLines(in, consumer);
+                    }
+                });
+                synchronized (this) {
+                    Files.delete(segment.sealing.toPath());
+                    segment.sealing = null;
+                }
+                compact();
+            } catch (IOException e) {
+                e.printStackTrace(); // The .sealing file is kept, and finished on the next start
+            }
+        });
+    }
+
+    /** Merges the newest MERGE_COUNT written segments into one while they are in the same size tier. Runs on the
+     * background thread, which is the only one removing segments: the merged segment is written without holding
+     * the lock, so appending and queries go on meanwhile.
+     */
+    private void compact() throws IOException {
+        while (true) {
+            List<Segment> merging;
+            synchronized (this) {
+                int end = segments.size();
+                while (end > 0 && segments.get(end - 1).sealing != null) {
+                    end--; // Sealed since, compacted when they are written
+                }
+                if (end < MERGE_COUNT) {
+                    return;
+                }
+                merging = new ArrayList<>(segments.subList(end - MERGE_COUNT, end));
+                int tier = tier(merging.get(0));
+                for (Segment segment : merging) {
+                    if (segment.sealing != null || tier(segment) != tier) {
+                        return; // Not written (its sealing failed), or not similar in size
+                    }
+                }
+            }
+            Segment merged = new Segment();
+            merged.firstNumber = merging.get(0).firstNumber;
+            merged.lastNumber = merging.get(MERGE_COUNT - 1).lastNumber;
+            merged.startMillis = merging.get(0).startMillis;
+            merged.endMillis = merging.get(MERGE_COUNT - 1).endMillis;
+            merged.file = segmentFile(merged.firstNumber, merged.lastNumber);
+            writeSegment(merged, consumer -> {
+                for (Segment segment : merging) {
+                    try (InputStream in = open(segment)) {
+                        readLines(in, consumer);
+                    }
+                }
+            });
+            synchronized (this) {
+                // Only seal() changed the list meanwhile, by adding segments after the merged ones
+                int index = segments.indexOf(merging.get(0));
+                segments.subList(index, index + MERGE_COUNT).clear();
+                segments.add(index, merged);
+                for (Segment segment : merging) {
+                    Files.delete(segment.file.toPath());
+                }
+            }
+        }
+    }
+
+    /** Gets the size tier of a written segment: 0 below MERGE_COUNT results, then one more for every MERGE_COUNT
+     * times more results.
+     */
+    private static int tier(Segment segment) {
+        int tier = 0;
+        for (int results = segment.results / MERGE_COUNT; results > 0; results /= MERGE_COUNT) {
+            tier++;
+        }
+        return tier;
+    }
+
+    /** Compresses a ".sealing" file left by a crash into the segment with the given number and deletes it.
+     */
+    private void finishSealing(File sealing, int number) throws IOException {
+        Segment segment = new Segment();
+        segment.firstNumber = number;
+        segment.lastNumber = number;
+        segment.startMillis = creationTime(sealing);
+        segment.endMillis = System.currentTimeMillis();
+        segment.file = segmentFile(number, number);
+        writeSegment(segment, consumer -> {
+            try (InputStream in = new FileInputStream(sealing)) {
+                readLines(in, consumer);
+            }
+        });
+        segments.add(segment);
+        sealedResults += segment.results;
+        for (Map.Entry<String, Integer> entry : segment.wins.entrySet()) {
+            sealedWins.merge(entry.getKey(), entry.getValue(), Integer::sum);
+        }
+        Files.delete(sealing.toPath());
+    }
+
+    /** Something that feeds lines to a consumer and may fail with an IOException. */
+    private interface LineSource {
+        void feed(Consumer<String> consumer) throws IOException;
+    }
+
+    /** Writes a segment: the deflated lines, the footer, the footer's length and the magic number. The segment is
+     * written to a temporary file first and then renamed, so it either exists completely or not at all.
+     * Fills in the segment's result and win counts.
+     */
+    private void writeSegment(Segment segment, LineSource lines) throws IOException {
+        File temporary = new File(directory, segment.file.getName() + ".tmp");
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (FileOutputStream out = new FileOutputStream(temporary)) {
+            DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, 1 << 14);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(deflated, StandardCharsets.UTF_8));
+            lines.feed(line -> {
+                try {
+                    writer.write(line);
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                segment.results++;
+                count(segment.wins, line);
+            });
+            writer.flush();
+            deflated.finish();
+
+            ByteArrayOutputStream footer = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(footer);
+            data.writeInt(segment.firstNumber);
+            data.writeInt(segment.lastNumber);
+            data.writeLong(segment.startMillis);
+            data.writeLong(segment.endMillis);
+            data.writeInt(segment.results);
+            data.writeInt(segment.wins.size());
+            for (Map.Entry<String, Integer> entry : segment.wins.entrySet()) {
+                data.writeUTF(entry.getKey());
+                data.writeInt(entry.getValue());
+            }
+            data.writeInt(footer.size());
+            data.writeInt(MAGIC);
+            footer.writeTo(out);
+            out.getFD().sync();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            deflater.end();
+        }
+        try { // Fails if the segment exists, rather than replacing it
+            Files.move(temporary.toPath(), segment.file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary.toPath());
+            throw e;
+        }
+    }
+
+    /** Reads the footers of all sealed segments, dropping segments covered by a compacted one, and finishes
+     * sealing that was interrupted by a crash. A segment whose footer cannot be read is renamed to ".bad" and
+     * skipped; its number stays taken.
+     */
+    private void loadSegments() throws IOException {
+        Pattern segmentPattern = Pattern.compile(Pattern.quote(baseName) + "-(\\d+)(?:-(\\d+))?\\.seg");
+        Pattern sealingPattern = Pattern.compile(Pattern.quote(baseName) + "-(\\d+)\\.sealing");
+        Pattern numberedPattern = Pattern.compile(Pattern.quote(baseName) + "-(\\d+)(?:-(\\d+))?\\.(seg|sealing).*");
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> segmentFiles = new ArrayList<>();
+        List<Integer> sealing = new ArrayList<>();
+        for (File file : files) {
+            Matcher numbered = numberedPattern.matcher(file.getName());
+            if (numbered.matches()) {
+                String last = numbered.group(2) != null ? numbered.group(2) : numbered.group(1);
+                highestNumber = Math.max(highestNumber, Integer.parseInt(last));
+            }
+            Matcher matcher = sealingPattern.matcher(file.getName());
+            if (file.getName().endsWith(".seg.tmp")) {
+                Files.delete(file.toPath()); // Left over from a crash while writing it
+            } else if (matcher.matches()) {
+                sealing.add(Integer.parseInt(matcher.group(1)));
+            } else if (segmentPattern.matcher(file.getName()).matches()) {
+                segmentFiles.add(file);
+            }
+        }
+        List<Segment> found = new ArrayList<>();
+        for (File file : segmentFiles) {
+            try {
+                found.add(readFooter(file));
+            } catch (IOException e) {
+                System.out.println(file.getName() + " cannot be read, renaming it to " + file.getName() + ".bad: " + e);
+                try {
+                    Files.move(file.toPath(), new File(directory, file.getName() + ".bad").toPath());
+                } catch (IOException e2) {
+                    e2.printStackTrace();
+                }
+            }
+        }
+        // Widest range first, so a compacted segment wins over the segments it replaced
+        found.sort((a, b) -> a.firstNumber != b.firstNumber ? Integer.compare(a.firstNumber, b.firstNumber)
+                : Integer.compare(b.lastNumber, a.lastNumber));
+        int covered = 0;
+        for (Segment segment : found) {
+            if (segment.lastNumber <= covered) {
+                Files.delete(segment.file.toPath());
+                continue;
+            }
+            segments.add(segment);
+            covered = segment.lastNumber;
+            sealedResults += segment.results;
+            for (Map.Entry<String, Integer> entry : segment.wins.entrySet()) {
+                sealedWins.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+        }
+        sealing.sort(null);
+        for (int number : sealing) {
+            if (isCovered(number)) {
+                Files.delete(sealingFile(number).toPath()); // Its segment was written before the crash
+            } else {
+                try {
+                    finishSealing(sealingFile(number), number);
+                } catch (IOException e) {
+                    e.printStackTrace(); // Left for the next start, its number stays taken
+                }
+            }
+        }
+        segments.sort((a, b) -> Integer.compare(a.firstNumber, b.firstNumber));
+    }
+
+    /** Checks if a loaded segment holds the results of a segment number.
+     */
+    private boolean isCovered(int number) {
+        for (Segment segment : segments) {
+            if (segment.firstNumber <= number && number <= segment.lastNumber) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Segment readFooter(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(in.length() - 8);
+            int footerLength = in.readInt();
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a sealed segment");
+            }
+            if (footerLength < 0 || footerLength > in.length() - 8) {
+                throw new IOException(file + " has a broken footer");
+            }
+            in.seek(in.length() - 8 - footerLength);
+            byte[] bytes = new byte[footerLength];
+            in.readFully(bytes);
+
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+            Segment segment = new Segment();
+            segment.file = file;
+            segment.firstNumber = data.readInt();
+            segment.lastNumber = data.readInt();
+            segment.startMillis = data.readLong();
+            segment.endMillis = data.readLong();
+            segment.results = data.readInt();
+            int players = data.readInt();
+            for (int i = 0; i < players; i++) {
+                segment.wins.put(data.readUTF(), data.readInt());
+            }
+            return segment;
+        }
+    }
+
+    /** Counts the results in the active segment and works out when it was started.
+     */
+    private void scanActive() throws IOException {
+        if (!activeFile.exists()) {
+            return;
+        }
+        try (InputStream in = new FileInputStream(activeFile)) {
+            readLines(in, line -> {
+                activeResults++;
+                count(activeWins, line);
+            });
+        }
+        if (activeResults > 0) {
+            // The active segment was started when the last one was sealed (or the file was created)
+            activeStartMillis = segments.isEmpty() ? creationTime(activeFile)
+                    : segments.get(segments.size() - 1).endMillis;
+        }
+    }
+
+    private File sealingFile(int number) {
+        return new File(directory, String.format("%s-%06d.sealing", baseName, number));
+    }
+
+    private File segmentFile(int firstNumber, int lastNumber) {
+        String range = firstNumber == lastNumber ? String.format("%06d", firstNumber)
+                : String.format("%06d-%06d", firstNumber, lastNumber);
+        return new File(directory, baseName + "-" + range + ".seg");
+    }
+
+    private static InputStream open(Segment segment) throws IOException {
+        return new InflaterInputStream(new BufferedInputStream(new FileInputStream(segment.file), 1 << 16));
+    }
+
+    private static long creationTime(File file) throws IOException {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class).creationTime().toMillis();
+    }
+
+    private static void readLines(InputStream in, Consumer<String> consumer) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.trim().isEmpty()) {
+                consumer.accept(line);
+            }
+        }
+    }
+
+    /** Gets the player of a result line: "1" for "Player 1 Wins!", the whole line for anything else.
+     */
+    private static String playerOf(String line) {
+        Matcher matcher = RESULT.matcher(line.trim());
+        return matcher.matches() ? matcher.group(1) : line.trim();
+    }
+
+    private static void count(Map<String, Integer> wins, String line) {
+        wins.merge(playerOf(line), 1, Integer::sum);
+    }
+}